@@ -0,0 +1,125 @@
+package net.fg83.rdrgen.benchmark;
+
+import be.tarsos.dsp.AudioEvent;
+import net.fg83.rdrgen.AudioUtils;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.trace.BandSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link AudioUtils} stages that turn an echogram into an impulse response, at
+ * realistic IR lengths.
+ *
+ * The echogram is synthetic: per octave band, arrivals grow denser with the square of time, as in
+ * a real room, and their energy decays exponentially with a reverberation time that shortens
+ * towards the high bands. Stages that work in place (the filters and the cleanup) get a fresh copy
+ * of their input before every invocation, outside of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AudioBenchmark {
+    private static final long SEED = 83;
+
+    @Param({"2", "8"})
+    public int irSeconds;
+
+    private BandSet bandSet;
+    private Echogram echogram;
+    private float[][] renderedBands;
+    private float[] combinedTemplate;
+    private Map<Integer, AudioEvent> bandSignals;
+
+    private AudioEvent filterInput;
+    private AudioEvent cleanupInput;
+
+    @Setup
+    public void setup() {
+        bandSet = BandSet.create(BandSet.Resolution.OCTAVE, false);
+        int samples = irSeconds * AudioUtils.SAMPLE_RATE;
+        echogram = createEchogram(bandSet, samples);
+
+        renderedBands = new float[bandSet.getCount()][];
+        bandSignals = new LinkedHashMap<>();
+        for (int b = 0; b < bandSet.getCount(); b++) {
+            AudioEvent band = AudioUtils.createAudioEventFromSamples(new float[samples]);
+            AudioUtils.smoothAndApplyDecay(band, echogram, b, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS, AudioUtils.SMOOTHING_NOISE_FLOOR, AudioUtils.DECAY_SCALE);
+            renderedBands[b] = band.getFloatBuffer().clone();
+            bandSignals.put(bandSet.getFrequency(b), band);
+        }
+        combinedTemplate = AudioUtils.combineBands(bandSignals).getFloatBuffer().clone();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetInputs() {
+        filterInput = AudioUtils.createAudioEventFromSamples(renderedBands[2].clone());
+        cleanupInput = AudioUtils.createAudioEventFromSamples(combinedTemplate.clone());
+    }
+
+    @Benchmark
+    public AudioEvent smoothAndApplyDecay() {
+        AudioEvent band = AudioUtils.createAudioEventFromSamples(new float[echogram.getLength()]);
+        AudioUtils.smoothAndApplyDecay(band, echogram, 2, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS, AudioUtils.SMOOTHING_NOISE_FLOOR, AudioUtils.DECAY_SCALE);
+        return band;
+    }
+
+    @Benchmark
+    public AudioEvent lowpassFilter() {
+        AudioUtils.applyLowpassFilter(filterInput, 125, AudioUtils.SAMPLE_RATE);
+        return filterInput;
+    }
+
+    @Benchmark
+    public AudioEvent highpassFilter() {
+        AudioUtils.applyHighpassFilter(filterInput, 4000, AudioUtils.SAMPLE_RATE);
+        return filterInput;
+    }
+
+    @Benchmark
+    public AudioEvent bandpassFilter() {
+        AudioUtils.applyBandpassFilter(filterInput, 625, 750, AudioUtils.SAMPLE_RATE);
+        return filterInput;
+    }
+
+    @Benchmark
+    public AudioEvent combineBands() {
+        return AudioUtils.combineBands(bandSignals);
+    }
+
+    @Benchmark
+    public AudioEvent cleanupIR() {
+        AudioUtils.cleanupIR(cleanupInput);
+        return cleanupInput;
+    }
+
+    private static Echogram createEchogram(BandSet bandSet, int samples) {
+        Echogram echogram = new Echogram(bandSet.getCount(), samples);
+        Random random = new Random(SEED);
+        double seconds = (double) samples / AudioUtils.SAMPLE_RATE;
+        for (int b = 0; b < bandSet.getCount(); b++) {
+            // Reverberation time in samples, from 2 seconds at the lowest band down to half a second
+            double reverberationTime = AudioUtils.SAMPLE_RATE * (2.0 - 1.5 * b / Math.max(1, bandSet.getCount() - 1));
+            for (int sample = 1; sample < samples; sample++) {
+                double t = (double) sample / samples;
+                if (random.nextDouble() < Math.min(1, 0.5 * t * t * seconds)) {
+                    double energy = Math.pow(10, -6.0 * sample / reverberationTime) * random.nextDouble();
+                    echogram.add(sample, b, (float) energy);
+                }
+            }
+        }
+        return echogram;
+    }
+}
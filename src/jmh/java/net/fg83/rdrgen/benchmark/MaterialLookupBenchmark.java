@@ -0,0 +1,90 @@
+package net.fg83.rdrgen.benchmark;
+
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.volume.AcousticVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the material lookups of the simulation: reading a voxel's material and its empty
+ * region size from the palette-compressed volume, as the traversal does per step, and resolving a
+ * block identifier through the material table, as the capture falls back to. Scores are per
+ * lookup.
+ *
+ * Voxel lookups go to random positions inside the volume, so they measure the cost of a miss in
+ * the section and palette caches rather than of walking neighbouring voxels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MaterialLookupBenchmark {
+    private static final int LOOKUPS = 4096;
+
+    @Param({"SHOEBOX", "CAVE", "OPEN_FIELD"})
+    public SyntheticWorld world;
+
+    private AcousticVolume volume;
+    private MaterialTable materials;
+    private int[] positions;
+    private String[] blockIds;
+
+    @Setup
+    public void setup() {
+        materials = MaterialTable.loadBundled(BandSet.create(BandSet.Resolution.OCTAVE, false));
+        volume = world.build(materials);
+        Random random = new Random(83);
+        positions = new int[LOOKUPS * 3];
+        for (int i = 0; i < LOOKUPS; i++) {
+            positions[3 * i] = random.nextInt(volume.getMaxX() - volume.getMinX()) + volume.getMinX();
+            positions[3 * i + 1] = random.nextInt(volume.getMaxY() - volume.getMinY()) + volume.getMinY();
+            positions[3 * i + 2] = random.nextInt(volume.getMaxZ() - volume.getMinZ()) + volume.getMinZ();
+        }
+        List<String> ids = List.of("minecraft:stone", "minecraft:oak_planks", "minecraft:dirt", "minecraft:oak_log", "minecraft:glass", "minecraft:white_wool", "minecraft:not_a_block");
+        blockIds = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            blockIds[i] = ids.get(random.nextInt(ids.size()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int voxelMaterial() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += volume.getMaterial(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int emptyRegionSize() {
+        int sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += volume.getEmptyRegionSize(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int blockMaterial() {
+        int sum = 0;
+        for (String blockId : blockIds) {
+            sum += materials.getBlockMaterial(blockId);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,176 @@
+package net.fg83.rdrgen.benchmark;
+
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.volume.AcousticVolume;
+import net.fg83.rdrgen.volume.VoxelSection;
+
+import java.util.Random;
+
+/**
+ * In-memory voxel worlds to benchmark against, built straight into an {@link AcousticVolume} with
+ * the mod's real material table, so benchmarks run headless without Minecraft.
+ *
+ * Every world is 128 blocks wide, 96 high and 128 deep, about what a capture at a short render
+ * distance holds, and is generated from a fixed seed so runs are comparable:
+ * - {@code SHOEBOX}: a closed stone hall with a plank floor, where rays bounce until they dissipate.
+ * - {@code CAVE}: solid stone with a winding tunnel of overlapping spheres carved out of it.
+ * - {@code OPEN_FIELD}: dirt ground under open sky with scattered log pillars, where most rays
+ *   escape after a bounce or two.
+ */
+public enum SyntheticWorld {
+    SHOEBOX,
+    CAVE,
+    OPEN_FIELD;
+
+    public static final int SECTIONS_X = 8;
+    public static final int SECTIONS_Y = 6;
+    public static final int SECTIONS_Z = 8;
+
+    private static final long SEED = 83;
+
+    /**
+     * Builds the world. Sections holding only empty voxels are left out, as a capture would.
+     *
+     * @param materials The material table to take the material indices from.
+     * @return the volume.
+     */
+    public AcousticVolume build(MaterialTable materials) {
+        int[][][] voxels = generate(materials);
+        AcousticVolume.Builder builder = new AcousticVolume.Builder(0, 0, 0, SECTIONS_X, SECTIONS_Y, SECTIONS_Z);
+        int[] values = new int[VoxelSection.SIZE * VoxelSection.SIZE * VoxelSection.SIZE];
+        for (int sx = 0; sx < SECTIONS_X; sx++) {
+            for (int sy = 0; sy < SECTIONS_Y; sy++) {
+                for (int sz = 0; sz < SECTIONS_Z; sz++) {
+                    boolean occupied = false;
+                    for (int x = 0; x < VoxelSection.SIZE; x++) {
+                        for (int y = 0; y < VoxelSection.SIZE; y++) {
+                            for (int z = 0; z < VoxelSection.SIZE; z++) {
+                                int material = voxels[sx * VoxelSection.SIZE + x][sy * VoxelSection.SIZE + y][sz * VoxelSection.SIZE + z];
+                                values[VoxelSection.index(x, y, z)] = material;
+                                occupied |= material != AcousticVolume.EMPTY;
+                            }
+                        }
+                    }
+                    if (occupied) {
+                        builder.putSection(sx, sy, sz, values);
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns where the source sits in this world, in open space.
+     *
+     * @return the x, y and z coordinates.
+     */
+    public double[] getSource() {
+        return switch (this) {
+            case SHOEBOX -> new double[]{50.5, 33.6, 58.5};
+            case CAVE -> new double[]{64.5, 48.5, 64.5};
+            case OPEN_FIELD -> new double[]{64.5, 33.6, 64.5};
+        };
+    }
+
+    /**
+     * Returns where the receiver sits in this world, a few blocks from the source.
+     *
+     * @return the x, y and z coordinates.
+     */
+    public double[] getReceiver() {
+        double[] source = getSource();
+        return new double[]{source[0] + 6, source[1], source[2] + 2};
+    }
+
+    private int[][][] generate(MaterialTable materials) {
+        int sizeX = SECTIONS_X * VoxelSection.SIZE;
+        int sizeY = SECTIONS_Y * VoxelSection.SIZE;
+        int sizeZ = SECTIONS_Z * VoxelSection.SIZE;
+        int[][][] voxels = new int[sizeX][sizeY][sizeZ];
+        int stone = materials.getMaterialIndex("stone");
+        Random random = new Random(SEED);
+
+        switch (this) {
+            case SHOEBOX -> {
+                int planks = materials.getMaterialIndex("planks");
+                for (int x = 24; x <= 104; x++) {
+                    for (int y = 31; y <= 56; y++) {
+                        for (int z = 40; z <= 90; z++) {
+                            boolean wall = x == 24 || x == 104 || y == 56 || z == 40 || z == 90;
+                            if (y == 31) {
+                                voxels[x][y][z] = planks;
+                            }
+                            else if (wall) {
+                                voxels[x][y][z] = stone;
+                            }
+                        }
+                    }
+                }
+            }
+            case CAVE -> {
+                for (int x = 0; x < sizeX; x++) {
+                    for (int y = 0; y < sizeY; y++) {
+                        for (int z = 0; z < sizeZ; z++) {
+                            voxels[x][y][z] = stone;
+                        }
+                    }
+                }
+                // A random walk of overlapping spheres starting at the source
+                double[] point = getSource();
+                for (int i = 0; i < 60; i++) {
+                    double radius = 3 + random.nextDouble() * 5;
+                    carveSphere(voxels, point[0], point[1], point[2], radius);
+                    point[0] = Math.clamp(point[0] + (random.nextDouble() - 0.5) * 16, 12, sizeX - 12);
+                    point[1] = Math.clamp(point[1] + (random.nextDouble() - 0.5) * 6, 12, sizeY - 12);
+                    point[2] = Math.clamp(point[2] + (random.nextDouble() - 0.5) * 16, 12, sizeZ - 12);
+                }
+                carveSphere(voxels, getReceiver()[0], getReceiver()[1], getReceiver()[2], 4);
+            }
+            case OPEN_FIELD -> {
+                int dirt = materials.getMaterialIndex("dirt");
+                int log = materials.getMaterialIndex("log");
+                for (int x = 0; x < sizeX; x++) {
+                    for (int z = 0; z < sizeZ; z++) {
+                        for (int y = 0; y < 32; y++) {
+                            voxels[x][y][z] = y < 28 ? stone : dirt;
+                        }
+                    }
+                }
+                double[] source = getSource();
+                for (int i = 0; i < 80; i++) {
+                    int x = random.nextInt(sizeX);
+                    int z = random.nextInt(sizeZ);
+                    // Keep the space around the source and receiver clear
+                    if (Math.abs(x - source[0] - 3) < 8 && Math.abs(z - source[2] - 1) < 6) {
+                        continue;
+                    }
+                    int height = 4 + random.nextInt(6);
+                    for (int y = 32; y < 32 + height; y++) {
+                        voxels[x][y][z] = log;
+                    }
+                }
+            }
+        }
+        return voxels;
+    }
+
+    private static void carveSphere(int[][][] voxels, double cx, double cy, double cz, double radius) {
+        int r = (int) Math.ceil(radius);
+        for (int x = (int) cx - r; x <= (int) cx + r; x++) {
+            for (int y = (int) cy - r; y <= (int) cy + r; y++) {
+                for (int z = (int) cz - r; z <= (int) cz + r; z++) {
+                    if (x < 0 || y < 0 || z < 0 || x >= voxels.length || y >= voxels[0].length || z >= voxels[0][0].length) {
+                        continue;
+                    }
+                    double dx = x + 0.5 - cx;
+                    double dy = y + 0.5 - cy;
+                    double dz = z + 0.5 - cz;
+                    if (dx * dx + dy * dy + dz * dz <= radius * radius) {
+                        voxels[x][y][z] = AcousticVolume.EMPTY;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.fg83.rdrgen.benchmark;
+
+import net.fg83.rdrgen.AudioUtils;
+import net.fg83.rdrgen.Medium;
+import net.fg83.rdrgen.RDRGConfig;
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.trace.FibonacciDirections;
+import net.fg83.rdrgen.trace.RayBatch;
+import net.fg83.rdrgen.trace.TraceContext;
+import net.fg83.rdrgen.volume.AcousticVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks tracing one batch of rays through each {@link SyntheticWorld}, the hot loop of every
+ * simulation. Scores are per ray.
+ *
+ * The trace uses the default settings of {@link RDRGConfig}: an 8 second IR, Russian roulette, the
+ * image-source order that decides which arrivals rays skip, and scattering from the material
+ * table. Directions are a fixed Fibonacci sphere, so every invocation traces the same rays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TraceBenchmark {
+    private static final int RAYS = RayBatch.DEFAULT_CAPACITY;
+
+    @Param({"SHOEBOX", "CAVE", "OPEN_FIELD"})
+    public SyntheticWorld world;
+
+    @Param({"OCTAVE", "THIRD_OCTAVE"})
+    public BandSet.Resolution resolution;
+
+    @Param({"true", "false"})
+    public boolean vectorKernels;
+
+    private TraceContext context;
+    private FibonacciDirections directions;
+    private RayBatch batch;
+
+    @Setup
+    public void setup() {
+        RDRGConfig config = new RDRGConfig();
+        BandSet bandSet = BandSet.create(resolution, vectorKernels);
+        MaterialTable materials = MaterialTable.loadBundled(bandSet);
+        AcousticVolume volume = world.build(materials);
+        double[] source = world.getSource();
+        context = new TraceContext(
+                volume,
+                source[0], source[1], source[2],
+                world.getReceiver(),
+                config.receiverRadius,
+                materials.getAttenuation(),
+                materials.getScattering(),
+                bandSet.toLogAttenuation(Medium.AIR),
+                RayBatch.DEFAULT_MAX_DISTANCE,
+                config.imageSourceOrder,
+                config.imageSourceRadius,
+                config.maxIRLengthSeconds * AudioUtils.SAMPLE_RATE,
+                config.rouletteThreshold
+        );
+        directions = new FibonacciDirections(RAYS);
+        batch = new RayBatch(RAYS, bandSet);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int traceBatch() {
+        batch.clear();
+        directions.addRays(batch, 0, RAYS, context.getSourceX(), context.getSourceY(), context.getSourceZ());
+        batch.trace(context);
+        return batch.getArrivalCount();
+    }
+}
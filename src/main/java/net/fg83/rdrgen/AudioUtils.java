@@ -6,14 +6,27 @@ import be.tarsos.dsp.filters.HighPass;
 import be.tarsos.dsp.filters.LowPassFS;
 import be.tarsos.dsp.io.TarsosDSPAudioFormat;
 import be.tarsos.dsp.io.jvm.WaveformWriter;
-
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.metrics.AudioStageEvent;
+import net.fg83.rdrgen.metrics.WavWriteEvent;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 
 /**
  * Utility class for performing various operations on audio data, such as filtering,
  * smoothing, attenuation application, decay processing, and signal manipulation.
+ *
+ * The rendering stages (smoothing, filtering, combining, cleanup) and the WAV writers each emit a
+ * Java Flight Recorder event, see {@link AudioStageEvent} and {@link WavWriteEvent}.
  */
 public class AudioUtils {
     public static final int SAMPLE_RATE = 48000;
@@ -57,6 +70,8 @@ public class AudioUtils {
      * @param sampleRate the sample rate of the audio data in Hz
      */
     public static void applyLowpassFilter(AudioEvent event, double frequency, int sampleRate) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
         LowPassFS lowPassFS = new LowPassFS((float) frequency, sampleRate);
 
         try {
@@ -66,6 +81,7 @@ public class AudioUtils {
         catch (Exception e) {
             e.printStackTrace();
         }
+        jfrEvent.end("lowpass", frequency, event.getBufferSize());
     }
 
     /**
@@ -77,6 +93,8 @@ public class AudioUtils {
      * @param sampleRate the sampling rate of the audio data, in samples per second
      */
     public static void applyHighpassFilter(AudioEvent event, double frequency, int sampleRate) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
         HighPass highPassFS = new HighPass((float) frequency, sampleRate);
         try {
             highPassFS.processingFinished();
@@ -85,6 +103,7 @@ public class AudioUtils {
         catch (Exception e) {
             e.printStackTrace();
         }
+        jfrEvent.end("highpass", frequency, event.getBufferSize());
     }
 
     /**
@@ -97,6 +116,8 @@ public class AudioUtils {
      * @param sampleRate the sample rate of the audio data in Hertz
      */
     public static void applyBandpassFilter(AudioEvent event, double centerFrequency, double bandwidth, int sampleRate) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
         BandPass bandPassFilter = new BandPass((float) centerFrequency, (float) bandwidth, sampleRate);
 
         try {
@@ -105,6 +126,7 @@ public class AudioUtils {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        jfrEvent.end("bandpass", centerFrequency, event.getBufferSize());
     }
 
     /**
@@ -113,9 +135,8 @@ public class AudioUtils {
      * it in place to introduce diffusion, apply a decay envelope, and add noise.
      *
      * @param event           The AudioEvent containing the input float buffer to process.
-     * @param irMatrix        A map containing impulse response (IR) coefficients indexed by
-     *                        time and frequency band.
-     * @param frequencyBand   The frequency band for which to apply processing.
+     * @param echogram        The echogram holding the energy of every band per sample.
+     * @param band            The index of the band for which to apply processing.
      * @param diffusionAlpha  A diffusion factor used during smoothing iterations.
      *                        Higher values increase smoothing.
      * @param smoothingIterations The number of smoothing iterations to perform.
@@ -125,35 +146,29 @@ public class AudioUtils {
      * @param decayScale      A scaling factor applied to the decay envelope, influencing
      *                        the rate of decay applied to the IR data.
      */
-    public static void smoothAndApplyDecay(AudioEvent event, Map<Double, Map<Integer, Double>> irMatrix, Integer frequencyBand, float diffusionAlpha, int smoothingIterations, float noiseFloor, double decayScale) {
+    public static void smoothAndApplyDecay(AudioEvent event, Echogram echogram, int band, float diffusionAlpha, int smoothingIterations, float noiseFloor, double decayScale) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
         float[] inbuffer = event.getFloatBuffer();
         float[] smoothedBuffer = new float[inbuffer.length];
+        float[] bandEnergy = echogram.getBand(band);
 
         // Step 1: Copy IR data into a working buffer
-        for (int i = 0; i < inbuffer.length; i++) {
-            if (irMatrix.containsKey((double) i) && irMatrix.get((double) i).containsKey(frequencyBand)) {
-                double coef = irMatrix.get((double) i).get(frequencyBand);
-                smoothedBuffer[i] = applyCoefficient(coef);
-            } else {
-                smoothedBuffer[i] = 0.0F;
-            }
+        int copyLength = Math.min(inbuffer.length, bandEnergy.length);
+        for (int i = 0; i < copyLength; i++) {
+            smoothedBuffer[i] = bandEnergy[i] > 0 ? applyCoefficient(bandEnergy[i]) : 0.0F;
         }
 
         // Step 2: Estimate decay curve
-        double firstEntry = findFirstNonZeroEntry(irMatrix, frequencyBand);
-        double lastEntry = findLastNonZeroEntry(irMatrix, frequencyBand);
-        double middleEntry = findMiddleEntry(irMatrix, frequencyBand);
+        double firstEntry = echogram.getFirstIndex(band);
+        double lastEntry = echogram.getLastIndex(band);
+        double middleEntry = echogram.getMedianIndex(band);
 
         // Approximate decay curve: logarithmic or exponential
         double decayRate = calculateDecayRate(firstEntry, middleEntry, lastEntry, decayScale);
 
         // Step 3: Apply smoothing
-        for (int iter = 0; iter < smoothingIterations; iter++) {
-            float[] tempBuffer = smoothedBuffer.clone();
-            for (int i = 1; i < smoothedBuffer.length - 1; i++) {
-                smoothedBuffer[i] += diffusionAlpha * (tempBuffer[i - 1] + tempBuffer[i + 1] - 2 * tempBuffer[i]);
-            }
-        }
+        diffuse(smoothedBuffer, diffusionAlpha, smoothingIterations);
 
         // Step 4: Apply noise and decay envelope
         for (int i = 0; i < inbuffer.length; i++) {
@@ -168,59 +183,57 @@ public class AudioUtils {
             float noise = ((((float) Math.random()) - 0.5F) * absorp);
             inbuffer[i] = noise + (absorp > 0.0F ? noiseFloor * absorp : 0.0F);
         }
+        jfrEvent.end("smoothAndApplyDecay", 0, inbuffer.length);
     }
 
     /**
-     * Finds the first non-zero entry in the specified frequency band from the given nested map.
-     *
-     * @param irMatrix a map where keys are doubles representing time or another metric, and values are maps
-     *                 of integers (frequency bands) to their respective double values (entries)
-     * @param frequencyBand the specific frequency band to search for a non-zero entry
-     * @return the first double key in the outer map that contains a non-zero value for the specified frequency
-     *         band, or 0.0 if no such entry exists
-     */
-    private static double findFirstNonZeroEntry(Map<Double, Map<Integer, Double>> irMatrix, Integer frequencyBand) {
-        return irMatrix.keySet().stream()
-                .sorted()
-                .filter(key -> irMatrix.get(key).containsKey(frequencyBand) && irMatrix.get(key).get(frequencyBand) > 0)
-                .findFirst()
-                .orElse(0.0);
-    }
-
-    /**
-     * Finds the last non-zero entry in the given frequency band from the irMatrix.
-     * Iterates over the sorted keys of the irMatrix in reverse order to locate the
-     * first occurrence where the specified frequency band has a non-zero value.
+     * Smooths a buffer in place by repeated diffusion: every iteration moves each sample towards
+     * the mean of its neighbours by {@code diffusionAlpha}. The first and last samples are kept.
      *
-     * @param irMatrix a map where keys are doubles and values are maps of frequency
-     *                 bands (as integers) to their corresponding double values
-     * @param frequencyBand the frequency band (as an integer) to check for a non-zero value
-     * @return the key (as a double) of the irMatrix corresponding to the last non-zero
-     *         entry in the specified frequency band, or 0.0 if no such entry exists
+     * @param buffer              The buffer to smooth.
+     * @param diffusionAlpha      The diffusion factor; values up to 0.5 keep a non-negative buffer non-negative.
+     * @param smoothingIterations The number of iterations.
      */
-    private static double findLastNonZeroEntry(Map<Double, Map<Integer, Double>> irMatrix, Integer frequencyBand) {
-        return irMatrix.keySet().stream()
-                .sorted(Comparator.reverseOrder())
-                .filter(key -> irMatrix.get(key).containsKey(frequencyBand) && irMatrix.get(key).get(frequencyBand) > 0)
-                .findFirst()
-                .orElse(0.0);
+    private static void diffuse(float[] buffer, float diffusionAlpha, int smoothingIterations) {
+        float[] tempBuffer = new float[buffer.length];
+        for (int iter = 0; iter < smoothingIterations; iter++) {
+            System.arraycopy(buffer, 0, tempBuffer, 0, buffer.length);
+            for (int i = 1; i < buffer.length - 1; i++) {
+                buffer[i] += diffusionAlpha * (tempBuffer[i - 1] + tempBuffer[i + 1] - 2 * tempBuffer[i]);
+            }
+        }
     }
 
     /**
-     * Finds the middle key from a sorted list of keys in the given irMatrix that correspond to
-     * a specific frequency band and have a positive value.
+     * Calculates the gain of a first-order directional channel relative to the omnidirectional
+     * signal, per sample. Both the omnidirectional energy and its directional component are
+     * smoothed the same way as the decay in {@link #smoothAndApplyDecay}, and the gain is their
+     * ratio: 1 where all energy arrives from the positive direction of the axis, -1 where it all
+     * arrives from the negative one, and 0 where it is balanced or there is no energy.
      *
-     * @param irMatrix a map containing keys of type Double mapping to another map of Integer and Double values
-     * @param frequencyBand an Integer representing the frequency band to filter keys
-     * @return the middle key from the filtered and sorted list of keys, or 0.0 if no such key exists
+     * @param omniEnergy          The omnidirectional energy of a band per sample.
+     * @param componentEnergy     The energy times the direction component along the axis, per sample.
+     * @param length              The number of samples to compute.
+     * @param diffusionAlpha      The diffusion factor used during smoothing iterations.
+     * @param smoothingIterations The number of smoothing iterations to perform.
+     * @return the gain per sample, between -1 and 1.
      */
-    private static double findMiddleEntry(Map<Double, Map<Integer, Double>> irMatrix, Integer frequencyBand) {
-        List<Double> keys = irMatrix.keySet().stream()
-                .sorted()
-                .filter(key -> irMatrix.get(key).containsKey(frequencyBand) && irMatrix.get(key).get(frequencyBand) > 0)
-                .toList();
-        if (keys.isEmpty()) return 0.0;
-        return keys.get(keys.size() / 2);
+    public static float[] calculateDirectionalGain(float[] omniEnergy, float[] componentEnergy, int length, float diffusionAlpha, int smoothingIterations) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
+        float[] omni = Arrays.copyOf(omniEnergy, length);
+        float[] component = Arrays.copyOf(componentEnergy, length);
+        diffuse(omni, diffusionAlpha, smoothingIterations);
+        diffuse(component, diffusionAlpha, smoothingIterations);
+
+        float[] gain = new float[length];
+        for (int i = 0; i < length; i++) {
+            if (omni[i] > 0) {
+                gain[i] = Math.max(-1.0F, Math.min(component[i] / omni[i], 1.0F));
+            }
+        }
+        jfrEvent.end("calculateDirectionalGain", 0, length);
+        return gain;
     }
 
     /**
@@ -272,9 +285,7 @@ public class AudioUtils {
         } else if (coef > 1) {
             return 1.0F;
         } else {
-            return new BigDecimal(coef)
-                    .setScale(8, RoundingMode.HALF_UP)
-                    .floatValue();
+            return (float) (Math.round(coef * 1e8) / 1e8);
         }
     }
 
@@ -285,6 +296,8 @@ public class AudioUtils {
      * @return a new AudioEvent containing the combined audio data from all provided bands
      */
     public static AudioEvent combineBands(Map<Integer, AudioEvent> bandSignals){
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
         int length = bandSignals.values().iterator().next().getBufferSize();
         float[] combinedSamples = new float[length];
         AudioEvent combinedEvent = new AudioEvent(AUDIO_FORMAT);
@@ -295,6 +308,7 @@ public class AudioUtils {
             }
         }
         combinedEvent.setFloatBuffer(combinedSamples);
+        jfrEvent.end("combineBands", 0, length);
         return combinedEvent;
     }
 
@@ -413,6 +427,14 @@ public class AudioUtils {
      * @param event the AudioEvent object containing the audio data to be processed
      */
     public static void cleanupIR(AudioEvent event) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
+        int length = event.getBufferSize();
+        cleanup(event);
+        jfrEvent.end("cleanupIR", 0, length);
+    }
+
+    private static void cleanup(AudioEvent event) {
         removeLeadingZeros(event);
         reverseIR(event);
         removeLeadingZeros(event);
@@ -422,6 +444,33 @@ public class AudioUtils {
         adjustDecay(event);
     }
 
+    /**
+     * Cleans up the channels of a multichannel impulse response together. The first channel is
+     * cleaned up as in {@link #cleanupIR(AudioEvent)}, and every other channel is cut to the same
+     * range of samples and gets the same decay adjustment, so the channels stay aligned.
+     *
+     * @param channels the AudioEvent objects holding the channels, the one that drives the cleanup first
+     */
+    public static void cleanupIR(AudioEvent[] channels) {
+        AudioStageEvent jfrEvent = new AudioStageEvent();
+        jfrEvent.begin();
+        float[] lead = channels[0].getFloatBuffer();
+        int startIndex = 0;
+        while (startIndex < lead.length && lead[startIndex] == 0.0f) {
+            startIndex++;
+        }
+
+        // Every step of the cleanup removes samples from either end, so the result is one contiguous range
+        cleanup(channels[0]);
+        int length = channels[0].getBufferSize();
+        for (int c = 1; c < channels.length; c++) {
+            float[] inbuffer = channels[c].getFloatBuffer();
+            channels[c].setFloatBuffer(Arrays.copyOfRange(inbuffer, startIndex, startIndex + length));
+            adjustDecay(channels[c]);
+        }
+        jfrEvent.end("cleanupIR", 0, lead.length * channels.length);
+    }
+
     /**
      * Finds the index of the first occurrence of the maximum absolute value in the given array.
      *
@@ -555,6 +604,8 @@ public class AudioUtils {
      * @param event the AudioEvent object containing the audio data to be written
      */
     public static void writeWavFile(String filename, AudioEvent event) {
+        WavWriteEvent jfrEvent = new WavWriteEvent();
+        jfrEvent.begin();
         try {
             WaveformWriter writer = new WaveformWriter(AUDIO_FORMAT, filename);
             writer.process(event);
@@ -562,6 +613,46 @@ public class AudioUtils {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        commitWavWrite(jfrEvent, filename, 1, event.getBufferSize());
+    }
+
+    /**
+     * Writes the channels of a multichannel impulse response to a WAV file at the specified location,
+     * interleaved in the given order, in the same sample format as {@link #writeWavFile(String, AudioEvent)}.
+     *
+     * @param filename the name and path of the output WAV file
+     * @param channels the AudioEvent objects holding the channels, all of the same length
+     */
+    public static void writeWavFile(String filename, AudioEvent[] channels) {
+        WavWriteEvent jfrEvent = new WavWriteEvent();
+        jfrEvent.begin();
+        int frames = channels[0].getBufferSize();
+        int frameSize = channels.length * SAMPLE_SIZE_IN_BITS / 8;
+        ByteBuffer bytes = ByteBuffer.allocate(frames * frameSize).order(BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            for (AudioEvent channel : channels) {
+                bytes.putInt((int) (channel.getFloatBuffer()[i] * 2147483647.0));
+            }
+        }
+
+        AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, SAMPLE_RATE, SAMPLE_SIZE_IN_BITS, channels.length, frameSize, SAMPLE_RATE, BIG_ENDIAN);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(bytes.array()), format, frames)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, new File(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        commitWavWrite(jfrEvent, filename, channels.length, frames);
+    }
+
+    private static void commitWavWrite(WavWriteEvent jfrEvent, String filename, int channels, int frames) {
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.path = filename;
+            jfrEvent.channels = channels;
+            jfrEvent.frames = frames;
+            jfrEvent.bytes = (long) frames * channels * SAMPLE_SIZE_IN_BITS / 8;
+            jfrEvent.commit();
+        }
     }
 
 }
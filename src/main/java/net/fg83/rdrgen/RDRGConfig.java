@@ -0,0 +1,161 @@
+package net.fg83.rdrgen;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import net.fg83.rdrgen.trace.BandSet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * User settings for the acoustic simulation, stored as JSON in the game's config directory.
+ *
+ * Fields are read directly by Gson, so every field needs a default value. Missing fields in an
+ * existing file keep their defaults, and the file is rewritten on load so that new settings show up.
+ */
+public class RDRGConfig {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // Frequency resolution of the simulation: OCTAVE (6 bands) or THIRD_OCTAVE (18 bands)
+    public BandSet.Resolution bandResolution = BandSet.Resolution.OCTAVE;
+
+    // Radius in blocks of the sphere around the receiver that a ray must enter to be heard
+    public double receiverRadius = 1.0;
+
+    // Number of receivers along each horizontal axis of a grid centred on the player, at eye height.
+    // 1 records a single IR at the player; larger grids trace once and write one IR per receiver.
+    // Receivers that end up inside blocks are dropped.
+    public int receiverGridSize = 1;
+
+    // Distance in blocks between neighbouring receivers of the grid
+    public double receiverGridSpacing = 4.0;
+
+    // Number of rays cast from the receiver, spread uniformly over the sphere; run time grows linearly with it.
+    // With an adaptive ray budget this is the most rays a simulation may cast.
+    public int rayCount = 2000000;
+
+    // Trace in rounds and stop as soon as the decay curves of the IR stop changing
+    public boolean adaptiveRayBudget = true;
+
+    // Number of rays per round of an adaptive simulation
+    public int raysPerRound = 100000;
+
+    // Largest change of any band's decay curve between rounds, in dB, at which the IR counts as converged
+    public double convergenceToleranceDb = 0.5;
+
+    // Longest impulse response to simulate, in seconds; rays stop once their delay would exceed it
+    public double maxIRLengthSeconds = 8.0;
+
+    // Energy, relative to the emitted energy of a ray, below which rays play Russian roulette: a ray survives
+    // with a probability proportional to its energy and is scaled back up to this level. 0 disables it.
+    public double rouletteThreshold = 0.0001;
+
+    // Highest reflection order computed exactly with image sources around the receiver; 0 leaves every reflection to rays.
+    // Run time grows steeply with the order.
+    public int imageSourceOrder = 2;
+
+    // Distance in blocks from the receiver, along each axis, within which image-source reflections are searched
+    public double imageSourceRadius = 16.0;
+
+    // Also record the direction every arrival comes from and write first-order Ambisonic IRs (4-channel AmbiX WAV,
+    // oriented to where the player faced) instead of mono ones. Costs about four times the memory per receiver.
+    public boolean ambisonicOutput = false;
+
+    // Use the Vector API for per-band energy math when the JVM was started with jdk.incubator.vector
+    public boolean vectorKernels = true;
+
+    // Also save the captured blocks and positions of every simulation as a .rdrcapture file next to its IRs,
+    // which the headless runner can render again without the game
+    public boolean saveCaptures = false;
+
+    public int getReceiverCount() {
+        int size = Math.max(receiverGridSize, 1);
+        return size * size;
+    }
+
+    /**
+     * Returns the receiver positions of the grid around a point as consecutive x, y, z triples,
+     * ordered along x first and then along z.
+     *
+     * @param x Centre x.
+     * @param y Centre y, shared by all receivers.
+     * @param z Centre z.
+     * @return The receiver positions.
+     */
+    public double[] createReceiverGrid(double x, double y, double z) {
+        int size = Math.max(receiverGridSize, 1);
+        double[] positions = new double[size * size * 3];
+        double half = (size - 1) / 2.0;
+        int index = 0;
+        for (int gz = 0; gz < size; gz++) {
+            for (int gx = 0; gx < size; gx++) {
+                positions[index++] = x + (gx - half) * receiverGridSpacing;
+                positions[index++] = y;
+                positions[index++] = z + (gz - half) * receiverGridSpacing;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Loads the config from a file, creating it with default values if it does not exist. An
+     * unreadable file is reported and replaced by defaults for this session.
+     *
+     * @param path The path of the config file.
+     * @return The loaded config.
+     */
+    public static RDRGConfig load(Path path) {
+        RDRGConfig config;
+        if (Files.exists(path)) {
+            try {
+                config = read(path);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                return new RDRGConfig();
+            }
+        }
+        else {
+            config = new RDRGConfig();
+        }
+        config.save(path);
+        return config;
+    }
+
+    /**
+     * Reads the config from an existing file without rewriting it.
+     *
+     * @param path The path of the config file.
+     * @return The config, with defaults for missing fields.
+     * @throws IOException if the file cannot be read or is not a valid config.
+     */
+    public static RDRGConfig read(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path)) {
+            RDRGConfig config = GSON.fromJson(reader, RDRGConfig.class);
+            return config != null ? config : new RDRGConfig();
+        }
+        catch (JsonParseException e) {
+            throw new IOException("Invalid config " + path, e);
+        }
+    }
+
+    public void save(Path path) {
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(path)) {
+                GSON.toJson(this, writer);
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public BandSet createBandSet() {
+        return BandSet.create(bandResolution == null ? BandSet.Resolution.OCTAVE : bandResolution, vectorKernels);
+    }
+}
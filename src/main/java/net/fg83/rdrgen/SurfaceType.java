@@ -1,7 +0,0 @@
-package net.fg83.rdrgen;
-
-public enum SurfaceType {
-    FLAT,
-    CORNER,
-    SEAM,
-}
@@ -1,17 +1,22 @@
 package net.fg83.rdrgen.client;
 
 import be.tarsos.dsp.AudioEvent;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
-import net.fg83.rdrgen.AbsorptionCoefficient;
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
+import net.fabricmc.loader.api.FabricLoader;
 import net.fg83.rdrgen.AudioUtils;
-import net.fg83.rdrgen.Ray;
+import net.fg83.rdrgen.RDRGConfig;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.ir.IRRenderer;
+import net.fg83.rdrgen.material.BlockStateMaterials;
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.metrics.RunMetrics;
 import net.fg83.rdrgen.task.PopulateRaysTask;
+import net.fg83.rdrgen.task.SimulationEngine;
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.volume.VolumeCapture;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.KeyBinding;
 import net.minecraft.client.util.InputUtil;
@@ -21,16 +26,11 @@ import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Vec3d;
 import org.lwjgl.glfw.GLFW;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -44,48 +44,43 @@ import java.time.format.DateTimeFormatter;
  * notifications and messages.
  *
  * Fields:
- * - `absorptionCoefficients`: Stores mappings of materials to frequency-based absorption coefficients.
- * - `blockCoefficientKeys`: Maps block names to coefficient sets.
+ * - `config`: The user settings loaded from `config/rdrgen.json`.
+ * - `materialTable`: Stores the acoustic materials, their per-band attenuation and scattering, and the blocks that use them.
+ * - `blockStateMaterials`: Maps every block state raw ID to its material, rebuilt whenever tags load.
  * - `keyBinding`: Manages key bindings for user interactions.
  * - `isKeyPressed`: Tracks the state of key presses.
- * - `raysSubmitted`: Tracks the total number of rays submitted for processing.
- * - `processedRays`: Tracks the total number of rays that have been processed.
  * - `trackingProgress`: Indicates whether progress tracking is enabled.
  * - `lastProgressUpdate`: Tracks the last progress checkpoint.
- * - `irMatrix`: Stores impulse response data organized by delay time and frequency.
- * - `irBands`: Represents available frequency bands for calculations.
- * - `rayPool`: A thread pool for managing ray-tracing tasks.
- * - `tracedRayQueue`: A concurrent queue for storing ray-tracing results.
- * - `isCastingRays`: Tracks whether ray casting is currently in progress.
- * - `isGeneratingIR`: Tracks whether impulse response generation is currently in progress.
+ * - `engine`: The long-lived simulation engine that owns the worker pool and runs queued simulation jobs.
  */
 public class RDRGClient implements ClientModInitializer {
 
-    public static final Map<String, List<AbsorptionCoefficient>> absorptionCoefficients = new HashMap<>();
-    public static final Map<String, String> blockCoefficientKeys = new HashMap<>();
+    public static RDRGConfig config;
+    public static MaterialTable materialTable;
+    public static volatile BlockStateMaterials blockStateMaterials;
 
     private static KeyBinding keyBinding;
     private boolean isKeyPressed = false;
 
-    public static long raysSubmitted;
-    public static long processedRays;
+    public static final String OUTPUT_DIRECTORY = "RenderDistance-Reverb-Generator";
+
     public static boolean trackingProgress;
     public static int lastProgressUpdate;
 
-    public Map<Double, Map<Integer, Double>> irMatrix;
-    public Map<Integer, AudioEvent> irBands;
-
-    public ForkJoinPool rayPool;
-    public Queue<Ray> tracedRayQueue;
-
-    public AtomicBoolean isCastingRays;
-    public AtomicBoolean isGeneratingIR;
+    public SimulationEngine engine;
 
     @Override
     public void onInitializeClient() {
-        loadAbsorptionCoefficients();
-        loadBlockCoefficientKeys();
-        initialize();
+        config = RDRGConfig.load(FabricLoader.getInstance().getConfigDir().resolve("rdrgen.json"));
+        loadMaterialTable(config.createBandSet());
+        engine = new SimulationEngine(materialTable.getBandSet());
+
+        // Block tags drive the material fallbacks, so the state table is rebuilt once they are bound
+        CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> {
+            if (client) {
+                blockStateMaterials = BlockStateMaterials.build(materialTable);
+            }
+        });
 
         keyBinding = KeyBindingHelper.registerKeyBinding(new KeyBinding(
                 "Run acoustic simulation",
@@ -99,9 +94,28 @@ public class RDRGClient implements ClientModInitializer {
 
             if (isIPressed) {
                 if (!isKeyPressed) {
+                    // A second press while a simulation is pending cancels it instead of starting another one
+                    int cancelled = engine.cancelAll();
+                    if (cancelled > 0) {
+                        sendPlayerMessage(client, "Cancelling simulation...", new Formatting[]{Formatting.GRAY});
+                    }
+                    else if (client.world != null && client.cameraEntity != null) {
+                        if (blockStateMaterials == null) {
+                            blockStateMaterials = BlockStateMaterials.build(materialTable);
+                        }
+                        // Copy the surrounding sections and read the positions in the same tick on the client
+                        // thread; the job resolves the copy on the engine thread and never touches live objects
+                        long start = System.nanoTime();
+                        Vec3d eyePos = client.cameraEntity.getEyePos();
+                        VolumeCapture capture = VolumeCapture.capture(client.world, eyePos, client.options.getClampedViewDistance());
+                        PopulateRaysTask job = new PopulateRaysTask(capture, blockStateMaterials,
+                                eyePos.x, eyePos.y, eyePos.z,
+                                eyePos.x, eyePos.y, eyePos.z,
+                                client.cameraEntity.getYaw(), createOutputName(client), client, this);
+                        job.getMetrics().addPhaseTime(RunMetrics.Phase.CAPTURE, System.nanoTime() - start);
+                        engine.submit(job);
+                    }
 
-                    new Thread(new PopulateRaysTask(client.cameraEntity, client.cameraEntity, client, this)).start();
-                    
                     isKeyPressed = true;
                 }
             } else {
@@ -112,92 +126,37 @@ public class RDRGClient implements ClientModInitializer {
     }
 
     /**
-     * Initializes the state and resources required for ray tracing and impulse response generation.
-     *
-     * This method resets tracking variables, initializes data structures for storing
-     * intermediate results, and configures thread pools and concurrent queues for
-     * managing ray-tracing tasks. It also initializes atomic flags used to monitor
-     * the status of concurrent operations, such as ray casting and IR generation.
+     * Resets the progress state before a simulation starts.
      *
      * The following actions are performed:
-     * - Resets counters for submitted and processed rays.
      * - Disables tracking of progress updates and clears the progress state.
-     * - Initializes hash maps for storing intermediate IR data and frequency bands.
-     * - Creates a custom ForkJoinPool for managing parallelized tasks.
-     * - Prepares a concurrent queue for storing ray-tracing results.
-     * - Instantiates atomic boolean flags for monitoring operation status.
      */
-    public void initialize(){
-        raysSubmitted = 0;
-        processedRays = 0;
+    public static void resetProgress(){
         trackingProgress = false;
         lastProgressUpdate = -1;
-
-        irMatrix = new HashMap<>();
-        irBands = new HashMap<>();
-
-        rayPool = new ForkJoinPool(); // Creates a custom ForkJoinPool
-
-        tracedRayQueue = new ConcurrentLinkedQueue<>();
-
-        isCastingRays = new AtomicBoolean(false);
-        isGeneratingIR = new AtomicBoolean(false);
     }
 
 
     /**
-     * Generates an impulse response (IR) waveform by processing ray-traced energy data.
+     * Generates an impulse response (IR) waveform from the echogram of a simulation.
      *
-     * This method iterates through predefined frequency bands, processes energy matrices
-     * for each band, applies smoothing and decay, and applies frequency-specific filters.
-     * It then combines all frequency bands into a single IR waveform, saves it as a .wav
-     * file, and notifies the player in the Minecraft client. The method also ensures
-     * proper directory creation for saving the file and plays a sound cue upon completion.
+     * The waveform is rendered by {@link IRRenderer}, saved as a .wav file, and the player is
+     * notified in the Minecraft client. A directional echogram is rendered as a 4-channel
+     * first-order Ambisonic (AmbiX) file oriented to the listener's yaw, otherwise as a mono file.
+     * The method also ensures proper directory creation for saving the file and plays a sound cue
+     * upon completion.
      *
-     * @param client The instance of the Minecraft client used for player notification
-     *               and accessing relevant runtime information such as server details.
+     * @param client      The instance of the Minecraft client used for player notification
+     *                    and accessing relevant runtime information such as server details.
+     * @param echogram    The energy that arrived at the receiver per band and sample.
+     * @param outputName  The base file name shared by the files of a run, see {@link #createOutputName}.
+     * @param label       A suffix that tells the files of a receiver grid apart, or {@code null} for a single receiver.
+     * @param listenerYaw The yaw the receiver faced, which orients an Ambisonic IR.
+     * @param metrics     The metrics of the run to add the rendering and writing times to.
      */
-    public void generateIR(MinecraftClient client){
-        for (int frequencyBand : Ray.FREQUENCY_BANDS) {
-            if (irMatrix.keySet().stream().max(Comparator.naturalOrder()).isEmpty()){
-                throw new RuntimeException("No energy data available for IR generation!");
-            }
-            int sampleLength = (int) Math.round(irMatrix.keySet().stream().max(Comparator.naturalOrder()).get()) + 1;
-
-            irBands.put(frequencyBand, AudioUtils.createAudioEventFromSamples(new float[sampleLength]));
-        }
-
-        irBands.forEach((frequencyBand, audioEvent) -> {
-            System.out.println("processing band: " + frequencyBand + "Hz");
-            AudioUtils.smoothAndApplyDecay(audioEvent, irMatrix, frequencyBand, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS, AudioUtils.SMOOTHING_NOISE_FLOOR, AudioUtils.DECAY_SCALE);
-
-            switch (frequencyBand){
-                case 125:
-                    AudioUtils.applyLowpassFilter(audioEvent, 125, AudioUtils.SAMPLE_RATE);
-                    break;
-                case 250:
-                    AudioUtils.applyLowpassFilter(audioEvent, 250, AudioUtils.SAMPLE_RATE);
-                    AudioUtils.applyHighpassFilter(audioEvent, 125, AudioUtils.SAMPLE_RATE);
-                    break;
-                case 2000:
-                    AudioUtils.applyHighpassFilter(audioEvent, 2000, AudioUtils.SAMPLE_RATE);
-                    AudioUtils.applyLowpassFilter(audioEvent, 4000, AudioUtils.SAMPLE_RATE);
-                    break;
-                case 4000:
-                    AudioUtils.applyHighpassFilter(audioEvent, 4000, AudioUtils.SAMPLE_RATE);
-                    break;
-                default:
-                    int freqMax = frequencyBand * 2;
-                    int freqMin = frequencyBand / 2;
-                    double centerFreq = (double) (freqMax + freqMin) / 2;
-                    double bandwidth = freqMax - freqMin;
-                    AudioUtils.applyBandpassFilter(audioEvent, centerFreq, bandwidth, AudioUtils.SAMPLE_RATE);
-            }
-        });
-        System.out.println("Combining bands...");
-        AudioEvent combinedIR = AudioUtils.combineBands(irBands);
-        AudioUtils.cleanupIR(combinedIR);
-        double length = (double) Math.round(((double) combinedIR.getBufferSize() / AudioUtils.SAMPLE_RATE) * 100) / 100;
+    public void generateIR(MinecraftClient client, Echogram echogram, String outputName, String label, float listenerYaw, RunMetrics metrics){
+        AudioEvent[] channels = IRRenderer.renderChannels(echogram, materialTable.getBandSet(), listenerYaw, metrics);
+        double length = (double) Math.round(((double) channels[0].getBufferSize() / AudioUtils.SAMPLE_RATE) * 100) / 100;
 
         sendPlayerMessage(client, "IR waveform generated! (" + length + " seconds)", new Formatting[]{Formatting.GOLD});
         
@@ -210,7 +169,23 @@ public class RDRGClient implements ClientModInitializer {
                 e.printStackTrace();
             }
         }
-        
+
+        String filename = IRRenderer.getFileName(outputName, label, channels.length);
+        IRRenderer.writeWav(getOutputPath(filename), channels, metrics);
+
+        assert client.player != null;
+        client.player.playSoundToPlayer(SoundEvent.of(Identifier.of("minecraft", "block.amethyst_block.chime")), SoundCategory.PLAYERS, 2.0F, 0.8F);
+        sendPlayerMessage(client, "Wrote file '" + filename + "'!", new Formatting[]{Formatting.GOLD});
+    }
+
+    /**
+     * Creates the base name of the files a run writes, from the world or server name and the
+     * current time.
+     *
+     * @param client The instance of the Minecraft client, used to look up the world or server name.
+     * @return the base name, without extension.
+     */
+    public String createOutputName(MinecraftClient client) {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         String name;
         if (client.isIntegratedServerRunning() && client.getServer() != null) {
@@ -219,36 +194,17 @@ public class RDRGClient implements ClientModInitializer {
         else {
             name = Objects.requireNonNull(client.getCurrentServerEntry()).name;
         }
-
-        String filename = "IR_" + name + "_" + timestamp + ".wav";
-        
-        AudioUtils.writeWavFile("RenderDistance-Reverb-Generator" + File.separator + filename, combinedIR);
-
-        assert client.player != null;
-        client.player.playSoundToPlayer(SoundEvent.of(Identifier.of("minecraft", "block.amethyst_block.chime")), SoundCategory.PLAYERS, 2.0F, 0.8F);
-        sendPlayerMessage(client, "Wrote file '" + filename + "'!", new Formatting[]{Formatting.GOLD});
-
-        initialize();
+        return "IR_" + name + "_" + timestamp;
     }
 
     /**
-     * Adds energy contributions to the impulse response (IR) matrix for a specific delay time.
-     * This method merges new energy values with existing energy data in the IR matrix.
-     * If the delay time is already present, frequencies and their energy values are combined
-     * by summing the existing and incoming values. If a frequency does not exist,
-     * it is added to the current energy data with its respective value.
+     * Returns the path of a file in the directory the IRs are written to.
      *
-     * @param delayTime The time delay (in seconds) associated with the energy contributions.
-     * @param newEnergy A map containing frequency-energy pairs to be added to the IR matrix.
-     *                  Keys represent frequencies, and values represent corresponding energy contributions.
+     * @param filename The name of the file.
+     * @return the path.
      */
-    public void addEnergyToIR(double delayTime, Map<Integer, Double> newEnergy){
-        irMatrix.merge(delayTime, newEnergy, (existingEnergy, incomingEnergy) -> {
-            incomingEnergy.forEach((frequency, energy) ->
-                    existingEnergy.merge(frequency, energy, Double::sum)
-            );
-            return existingEnergy;
-        });
+    public static Path getOutputPath(String filename) {
+        return Paths.get(OUTPUT_DIRECTORY, filename);
     }
 
     /**
@@ -258,12 +214,15 @@ public class RDRGClient implements ClientModInitializer {
      * and the total rays to be processed. If progress reaches a certain threshold (increments of 5%),
      * it updates the player's chat with a progress bar displaying the progress percentage.
      *
-     * @param client The instance of the Minecraft client used to send progress messages to the player.
+     * @param client        The instance of the Minecraft client used to send progress messages to the player.
+     * @param processedRays The number of rays traced so far.
+     * @param plannedRays   The number of rays the simulation means to trace.
      */
-    public static void reportProgress(MinecraftClient client) {
-        final int totalRays = 10810429;
-
-        float percentage = ((float) processedRays / totalRays) * 100;
+    public static void reportProgress(MinecraftClient client, long processedRays, long plannedRays) {
+        if (plannedRays <= 0) {
+            return;
+        }
+        float percentage = ((float) processedRays / plannedRays) * 100;
 
         int progressStep = (int) Math.floor(Math.floor(percentage) / 5);
 
@@ -300,94 +259,23 @@ public class RDRGClient implements ClientModInitializer {
     }
 
     /**
-     * Loads absorption coefficient data from a JSON file and populates the `absorptionCoefficients` map.
+     * Loads the material table from the "coefficient_sets.json" and "item_map.json" resources.
      *
-     * This method reads the resource file "coefficient_sets.json" from the classpath. The JSON file is
-     * expected to contain objects with keys representing material types and values containing frequency-to-coefficient
-     * mappings. Each frequency-to-coefficient mapping specifies a frequency in Hz and its corresponding absorption
-     * coefficient.
+     * The coefficient sets map material names to frequency-to-coefficient objects, and the item map
+     * assigns each block identifier one of those sets. See {@link MaterialTable#loadBundled(BandSet)}.
      *
-     * For each entry in the JSON file:
-     * - The material type (key) is used as the key for the `absorptionCoefficients` map.
-     * - The frequency-to-coefficient pairs are stored as a list of `AbsorptionCoefficient` objects associated with the key.
-     *
-     * The method uses Java's try-with-resources statement to ensure that input streams and resources are
-     * properly closed after use.
+     * @param bandSet The frequency bands to resolve the coefficients for.
      *
      * Throws:
-     * - RuntimeException: If the resource file "coefficient_sets.json" is missing or any I/O error occurs during reading
-     *   or parsing.
+     * - RuntimeException: If either resource file is missing or an I/O error occurs during reading.
      *
      * Outputs:
-     * - Prints the total number of absorption coefficient sets loaded to the console.
-     */
-    private void loadAbsorptionCoefficients() {
-        try (InputStream inputStream = getClass().getResourceAsStream("/coefficient_sets.json")) {
-            assert inputStream != null;
-            try (InputStreamReader reader = new InputStreamReader(inputStream)) {
-
-                JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-                for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
-                    String key = entry.getKey();
-                    JsonObject coefficients = entry.getValue().getAsJsonObject();
-                    List<AbsorptionCoefficient> coefficientList = new ArrayList<>();
-
-                    for (Map.Entry<String, JsonElement> freqEntry : coefficients.entrySet()) {
-                        int frequency = Integer.parseInt(freqEntry.getKey());
-                        double value = freqEntry.getValue().getAsDouble();
-                        coefficientList.add(new AbsorptionCoefficient(frequency, value));
-                    }
-
-                    absorptionCoefficients.put(key, coefficientList);
-                }
-                System.out.println("Loaded " + absorptionCoefficients.size() + " absorption coefficient sets");
-            }
-        }
-        catch (IOException e) {
-            throw new RuntimeException("Failed to load coefficient_sets.json", e);
-        }
-    }
-
-    /**
-     * Loads block-to-coefficient key mappings from a JSON file and stores them in the `blockCoefficientKeys` map.
-     *
-     * The method accesses a resource file named "item_map.json" located in the classpath. This JSON file is expected
-     * to contain an array of objects where each object represents a block and its associated coefficients. Each object
-     * in the array should have the following keys:
-     * - "block": The name of the block (String).
-     * - "coefficients": The coefficient information (String).
-     *
-     * The method parses the JSON data, extracts the block names and their coefficients, and inserts them into the
-     * `blockCoefficientKeys` map, where the block names serve as keys and the coefficients as their corresponding values.
-     *
-     * If the "item_map.json" resource cannot be found or any IOException occurs during the reading process, a runtime
-     * exception is thrown with a descriptive error message.
-     *
-     * This method uses Java's try-with-resources to ensure that input streams and readers are automatically closed after use.
-     *
-     * Throws:
-     * - RuntimeException: If the "item_map.json" file is missing or an I/O error occurs during reading or parsing.
+     * - Prints the number of materials and mapped blocks loaded, and the energy kernel in use, to the console.
      */
-    private void loadBlockCoefficientKeys() {
-        try (InputStream inputStream = getClass().getResourceAsStream("/item_map.json")) {
-            assert inputStream != null;
-            try (InputStreamReader reader = new InputStreamReader(inputStream)) {
-
-                JsonArray json = JsonParser.parseReader(reader).getAsJsonArray();
-
-                for (JsonElement element : json) {
-                    JsonObject item = element.getAsJsonObject();
-                    String block = item.get("block").getAsString();
-                    String coef = item.get("coefficients").getAsString();
-                    blockCoefficientKeys.put(block, coef);
-                }
-
-                System.out.println("Loaded " + blockCoefficientKeys.size() + " block coefficient keys");
-            }
-        }
-        catch (IOException e) {
-            throw new RuntimeException("Failed to load item_map.json", e);
-        }
+    private void loadMaterialTable(BandSet bandSet) {
+        materialTable = MaterialTable.loadBundled(bandSet);
+        System.out.println("Loaded " + materialTable.size() + " materials and " + materialTable.getBlockCount() + " block mappings");
+        System.out.println("Simulating " + bandSet.getCount() + " " + bandSet.getResolution() + " bands with " + bandSet.getKernel().getName());
     }
 
     /**
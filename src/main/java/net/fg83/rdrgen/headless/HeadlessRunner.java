@@ -0,0 +1,212 @@
+package net.fg83.rdrgen.headless;
+
+import net.fg83.rdrgen.RDRGConfig;
+import net.fg83.rdrgen.material.BlockNameMaterials;
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.task.RenderCaptureTask;
+import net.fg83.rdrgen.task.SimulationEngine;
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.volume.AcousticVolume;
+import net.fg83.rdrgen.volume.CaptureFile;
+import net.fg83.rdrgen.volume.RegionCapture;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command-line entry point that renders IRs from saved captures without Minecraft, so they can be
+ * batch-rendered on build servers and CI machines.
+ *
+ * Usage: {@code HeadlessRunner <capture file>... [--output <directory>] [--config <rdrgen.json>]}
+ * or {@code HeadlessRunner --world <save directory> --source x,y,z --receiver x,y,z [--yaw degrees]
+ * [--radius chunks] [--dimension overworld|the_nether|the_end] [--output ...] [--config ...]}
+ *
+ * Every {@link CaptureFile} is traced with the same simulation and rendering pipeline as the
+ * client, on a {@link SimulationEngine} using all cores. The IRs and metrics of a capture are named
+ * after it and written to the output directory, which defaults to the working directory. A world
+ * save is read straight from its region files by {@link RegionCapture} instead, within a radius of
+ * chunks around the receiver, and named after the world and the time like in the client. Without a
+ * config file the default settings are used; an existing config is read but never rewritten. The
+ * process exits with status 1 if any capture failed or produced no IR.
+ */
+public class HeadlessRunner {
+
+    private static final int DEFAULT_CHUNK_RADIUS = 8;
+
+    public static void main(String[] args) {
+        Path outputDirectory = Paths.get(".");
+        RDRGConfig config = new RDRGConfig();
+        List<Path> captures = new ArrayList<>();
+        Path world = null;
+        String dimension = "overworld";
+        double[] source = null;
+        double[] receiver = null;
+        float yaw = 0;
+        int chunkRadius = DEFAULT_CHUNK_RADIUS;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output" -> outputDirectory = Paths.get(requireValue(args, ++i));
+                case "--config" -> config = loadConfig(Paths.get(requireValue(args, ++i)));
+                case "--world" -> world = Paths.get(requireValue(args, ++i));
+                case "--dimension" -> dimension = requireValue(args, ++i);
+                case "--source" -> source = parsePosition(requireValue(args, ++i));
+                case "--receiver" -> receiver = parsePosition(requireValue(args, ++i));
+                case "--yaw" -> yaw = (float) parseNumber(requireValue(args, ++i));
+                case "--radius" -> chunkRadius = (int) parseNumber(requireValue(args, ++i));
+                default -> captures.add(Paths.get(args[i]));
+            }
+        }
+        if (world != null && (source == null || receiver == null)) {
+            usage();
+        }
+        if (captures.isEmpty() == (world == null)) {
+            usage();
+        }
+
+        BandSet bandSet = config.createBandSet();
+        MaterialTable materials = MaterialTable.loadBundled(bandSet);
+        System.out.println("Simulating " + bandSet.getCount() + " " + bandSet.getResolution() + " bands with " + bandSet.getKernel().getName()
+                + " on " + Runtime.getRuntime().availableProcessors() + " cores");
+
+        boolean failed = false;
+        SimulationEngine engine = new SimulationEngine(bandSet);
+        try {
+            Files.createDirectories(outputDirectory);
+            for (Path path : captures) {
+                failed |= !render(engine, path, config, materials, outputDirectory);
+            }
+            if (world != null) {
+                long start = System.nanoTime();
+                CaptureFile capture = captureWorld(world, dimension, source, receiver, yaw, chunkRadius, materials);
+                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+                String outputName = "IR_" + world.toAbsolutePath().normalize().getFileName() + "_" + timestamp;
+                failed |= !render(engine, capture, outputName, System.nanoTime() - start, config, materials, outputDirectory);
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+        }
+        finally {
+            engine.shutdown();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Renders the IRs of one capture and waits for them to be written.
+     *
+     * @return true if at least one IR was written.
+     */
+    private static boolean render(SimulationEngine engine, Path path, RDRGConfig config, MaterialTable materials, Path outputDirectory) {
+        CaptureFile capture;
+        long start = System.nanoTime();
+        try {
+            capture = CaptureFile.read(path, materials);
+        }
+        catch (IOException e) {
+            System.out.println("Could not read capture " + path + ": " + e.getMessage());
+            return false;
+        }
+        String outputName = path.getFileName().toString();
+        if (outputName.endsWith(CaptureFile.EXTENSION)) {
+            outputName = outputName.substring(0, outputName.length() - CaptureFile.EXTENSION.length());
+        }
+        return render(engine, capture, outputName, System.nanoTime() - start, config, materials, outputDirectory);
+    }
+
+    /**
+     * Renders the IRs of a scene and waits for them to be written.
+     *
+     * @param captureTime How long loading the scene took in nanoseconds, recorded as its capture phase.
+     * @return true if at least one IR was written.
+     */
+    private static boolean render(SimulationEngine engine, CaptureFile capture, String outputName, long captureTime, RDRGConfig config, MaterialTable materials, Path outputDirectory) {
+        RenderCaptureTask task = new RenderCaptureTask(engine, capture, config, materials, outputDirectory, outputName);
+        task.getMetrics().addPhaseTime(RunMetrics.Phase.CAPTURE, captureTime);
+        System.out.println("Rendering " + outputName + " as simulation #" + engine.submit(task) + "...");
+        try {
+            task.await();
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return task.getFilesWritten() > 0;
+    }
+
+    /**
+     * Reads the blocks around the receiver from the region files of a world save.
+     *
+     * @param world       The save directory, holding {@code level.dat}.
+     * @param dimension   The dimension to read: overworld, the_nether or the_end.
+     * @param source      The source position.
+     * @param receiver    The receiver position, which the volume is centred on.
+     * @param yaw         The yaw the receiver faces.
+     * @param chunkRadius The number of chunks to read on each side of the receiver's chunk.
+     * @param materials   The material table to resolve blocks against.
+     * @return the scene.
+     * @throws IOException if the region files cannot be read.
+     */
+    private static CaptureFile captureWorld(Path world, String dimension, double[] source, double[] receiver, float yaw, int chunkRadius, MaterialTable materials) throws IOException {
+        Path regionDirectory = switch (dimension) {
+            case "overworld" -> world.resolve("region");
+            case "the_nether" -> world.resolve("DIM-1").resolve("region");
+            case "the_end" -> world.resolve("DIM1").resolve("region");
+            default -> throw new IllegalArgumentException("Unknown dimension " + dimension);
+        };
+        if (!Files.isDirectory(regionDirectory)) {
+            throw new IOException(regionDirectory + " is not a region directory");
+        }
+        AcousticVolume volume = RegionCapture.capture(regionDirectory, receiver[0], receiver[2], chunkRadius, new BlockNameMaterials(materials));
+        System.out.println("Read " + (chunkRadius * 2 + 1) + "x" + (chunkRadius * 2 + 1) + " chunks of " + regionDirectory);
+        return new CaptureFile(volume, source[0], source[1], source[2], receiver[0], receiver[1], receiver[2], yaw);
+    }
+
+    private static double[] parsePosition(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 3) {
+            usage();
+        }
+        return new double[]{parseNumber(parts[0]), parseNumber(parts[1]), parseNumber(parts[2])};
+    }
+
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        }
+        catch (NumberFormatException e) {
+            usage();
+            return 0;
+        }
+    }
+
+    private static RDRGConfig loadConfig(Path path) {
+        try {
+            return RDRGConfig.read(path);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read config " + path, e);
+        }
+    }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            usage();
+        }
+        return args[index];
+    }
+
+    private static void usage() {
+        System.out.println("Usage: HeadlessRunner <capture file>... [--output <directory>] [--config <rdrgen.json>]");
+        System.out.println("   or: HeadlessRunner --world <save directory> --source x,y,z --receiver x,y,z [--yaw degrees] [--radius chunks]");
+        System.out.println("                      [--dimension overworld|the_nether|the_end] [--output <directory>] [--config <rdrgen.json>]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,112 @@
+package net.fg83.rdrgen.ir;
+
+/**
+ * Decides when a simulation traced in rounds has converged.
+ *
+ * After every round the cumulative energy histogram is reduced to the energy decay curve of each
+ * band (the backward-integrated Schroeder curve, in dB relative to the total energy of the band),
+ * sampled in {@link #BIN_SAMPLES}-sample bins. The largest change of any band between two rounds,
+ * taken over the part of the curve above {@link #EVALUATED_RANGE_DB}, measures how much the last
+ * round still changed the result. Each curve is relative to the total energy of its band, so the
+ * growing number of rays does not shift it.
+ *
+ * The simulation counts as converged once that change stays within the tolerance for
+ * {@link #CONVERGED_ROUNDS} consecutive rounds.
+ *
+ * A band that still has no energy has not changed, so a receiver that hears nothing, such as one
+ * of a grid that sits in a sealed space, converges like any other instead of holding up the run.
+ * A band that gains its first energy counts as an unbounded change for that round.
+ */
+public class ConvergenceMonitor {
+    public static final int BIN_SAMPLES = 480;
+    public static final double EVALUATED_RANGE_DB = -35;
+    public static final int CONVERGED_ROUNDS = 2;
+
+    private final double toleranceDb;
+    private double[][] previousCurves;
+    private double lastChangeDb = Double.POSITIVE_INFINITY;
+    private int stableRounds = 0;
+
+    /**
+     * @param toleranceDb The largest change of the decay curves, in dB, that counts as converged.
+     */
+    public ConvergenceMonitor(double toleranceDb) {
+        this.toleranceDb = toleranceDb;
+    }
+
+    /**
+     * Compares the decay curves of the cumulative histogram with those of the previous round.
+     *
+     * @param histogram The reduced histogram of every ray traced so far.
+     * @return the largest change of any decay curve since the previous round, in dB, or positive
+     *         infinity on the first round or when a band received its first energy.
+     */
+    public double update(EnergyHistogram histogram) {
+        double[][] curves = decayCurves(histogram);
+        double change = previousCurves == null ? Double.POSITIVE_INFINITY : maxDifference(previousCurves, curves);
+        previousCurves = curves;
+
+        lastChangeDb = change;
+        stableRounds = change <= toleranceDb ? stableRounds + 1 : 0;
+        return change;
+    }
+
+    public boolean isConverged() {
+        return stableRounds >= CONVERGED_ROUNDS;
+    }
+
+    public double getLastChangeDb() {
+        return lastChangeDb;
+    }
+
+    private static double[][] decayCurves(EnergyHistogram histogram) {
+        int bins = (histogram.getLength() + BIN_SAMPLES - 1) / BIN_SAMPLES;
+        double[][] curves = new double[histogram.getBands()][bins];
+        for (int b = 0; b < histogram.getBands(); b++) {
+            double[] curve = curves[b];
+            for (int sample = 0; sample < histogram.getLength(); sample++) {
+                curve[sample / BIN_SAMPLES] += histogram.get(sample, b);
+            }
+            // Schroeder backward integration
+            for (int bin = bins - 2; bin >= 0; bin--) {
+                curve[bin] += curve[bin + 1];
+            }
+            double total = bins > 0 ? curve[0] : 0;
+            for (int bin = 0; bin < bins; bin++) {
+                curve[bin] = total > 0 && curve[bin] > 0 ? 10 * Math.log10(curve[bin] / total) : Double.NEGATIVE_INFINITY;
+            }
+        }
+        return curves;
+    }
+
+    private static double maxDifference(double[][] previous, double[][] current) {
+        double max = 0;
+        for (int b = 0; b < current.length; b++) {
+            boolean wasSilent = isSilent(previous[b]);
+            if (isSilent(current[b])) {
+                if (!wasSilent) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            if (wasSilent) {
+                return Double.POSITIVE_INFINITY;
+            }
+            int bins = Math.max(previous[b].length, current[b].length);
+            for (int bin = 0; bin < bins; bin++) {
+                double before = bin < previous[b].length ? previous[b][bin] : Double.NEGATIVE_INFINITY;
+                double after = bin < current[b].length ? current[b][bin] : Double.NEGATIVE_INFINITY;
+                if (before < EVALUATED_RANGE_DB && after < EVALUATED_RANGE_DB) {
+                    break;
+                }
+                // Clamp to the evaluated range so a curve dropping out of it counts as a finite change
+                max = Math.max(max, Math.abs(Math.max(before, EVALUATED_RANGE_DB) - Math.max(after, EVALUATED_RANGE_DB)));
+            }
+        }
+        return max;
+    }
+
+    private static boolean isSilent(double[] curve) {
+        return curve.length == 0 || curve[0] == Double.NEGATIVE_INFINITY;
+    }
+}
@@ -0,0 +1,236 @@
+package net.fg83.rdrgen.ir;
+
+/**
+ * A dense echogram: the energy arriving at the receiver per frequency band and output sample.
+ *
+ * Energy is stored as one {@code float[]} per band, all of the same length. The first, last and
+ * number of non-zero samples of every band are tracked as energy is added, so the decay estimate
+ * of the IR renderer does not need to search the data. The median non-zero sample is resolved with
+ * a single pass over the band the first time it is requested and cached until the band changes.
+ *
+ * Bands without any energy report 0 for their first, last and median index.
+ *
+ * Energy is normalized to the ray count of a reference simulation, so the level of an echogram
+ * does not depend on how many rays were cast to produce it.
+ *
+ * A directional echogram also holds the first-order x, y and z components of the energy in world
+ * axes, see {@link EnergyHistogram}, which the IR renderer turns into Ambisonic channels.
+ */
+public final class Echogram {
+    // Ray count of the former fixed pitch/yaw direction ladder, which set the level the IR renderer is tuned for
+    public static final long REFERENCE_RAY_COUNT = 8121523;
+
+    private final float[][] energy;
+    private final float[][][] components;
+    private final int length;
+
+    private final int[] firstIndex;
+    private final int[] lastIndex;
+    private final int[] nonZeroCount;
+    private final int[] medianIndex;
+
+    public Echogram(int bands, int samples) {
+        this(bands, samples, false);
+    }
+
+    /**
+     * @param bands       The number of frequency bands.
+     * @param samples     The length of the echogram in samples.
+     * @param directional Whether to hold the directional components of the energy.
+     */
+    public Echogram(int bands, int samples, boolean directional) {
+        this.energy = new float[bands][samples];
+        this.components = directional ? new float[3][bands][samples] : null;
+        this.length = samples;
+        this.firstIndex = new int[bands];
+        this.lastIndex = new int[bands];
+        this.nonZeroCount = new int[bands];
+        this.medianIndex = new int[bands];
+        for (int b = 0; b < bands; b++) {
+            firstIndex[b] = -1;
+            lastIndex[b] = -1;
+            medianIndex[b] = -1;
+        }
+    }
+
+    /**
+     * Copies a reduced energy histogram into a new echogram with one linear pass. Each ray is
+     * weighted by {@code REFERENCE_RAY_COUNT / rayCount}, as every ray covers an equal solid angle.
+     *
+     * @param histogram The histogram to copy.
+     * @param rayCount  The number of rays cast to produce the histogram.
+     * @return The echogram.
+     */
+    public static Echogram fromHistogram(EnergyHistogram histogram, long rayCount) {
+        return fromHistograms(histogram, rayCount, null);
+    }
+
+    /**
+     * Combines the histogram of traced rays with the early reflections computed by the
+     * {@link ImageSourceSolver}. Rays are weighted as in {@link #fromHistogram}; the early
+     * reflections are already at the reference ray count and are copied as they are.
+     *
+     * @param rays             The histogram of the traced rays.
+     * @param rayCount         The number of rays cast to produce it.
+     * @param earlyReflections The image-source histogram, or {@code null} if there is none.
+     * @return The echogram, as long as the longer of the two histograms. It is directional if the
+     *         histogram of the rays is.
+     */
+    public static Echogram fromHistograms(EnergyHistogram rays, long rayCount, EnergyHistogram earlyReflections) {
+        int length = rays.getLength();
+        if (earlyReflections != null) {
+            length = Math.max(length, earlyReflections.getLength());
+        }
+        Echogram echogram = new Echogram(rays.getBands(), length, rays.isDirectional());
+        copy(echogram, rays, (double) REFERENCE_RAY_COUNT / rayCount);
+        if (earlyReflections != null) {
+            copy(echogram, earlyReflections, 1.0);
+        }
+        return echogram;
+    }
+
+    private static void copy(Echogram echogram, EnergyHistogram histogram, double weight) {
+        for (int sample = 0; sample < histogram.getLength(); sample++) {
+            for (int b = 0; b < histogram.getBands(); b++) {
+                double value = histogram.get(sample, b) * weight;
+                if (value != 0) {
+                    echogram.add(sample, b, (float) value);
+                }
+            }
+        }
+        if (echogram.isDirectional() && histogram.isDirectional()) {
+            for (int sample = 0; sample < histogram.getLength(); sample++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float[][] axisEnergy = echogram.components[axis];
+                    for (int b = 0; b < histogram.getBands(); b++) {
+                        axisEnergy[b][sample] += (float) (histogram.get(sample, axis + 1, b) * weight);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds energy to one sample of a band.
+     *
+     * @param sample The sample index, which must be less than {@link #getLength()}.
+     * @param band   The band index.
+     * @param value  The energy to add.
+     */
+    public void add(int sample, int band, float value) {
+        float[] bandEnergy = energy[band];
+        boolean wasPositive = bandEnergy[sample] > 0;
+        bandEnergy[sample] += value;
+        boolean isPositive = bandEnergy[sample] > 0;
+        if (wasPositive == isPositive) {
+            return;
+        }
+
+        medianIndex[band] = -1;
+        if (isPositive) {
+            nonZeroCount[band]++;
+            if (firstIndex[band] == -1 || sample < firstIndex[band]) {
+                firstIndex[band] = sample;
+            }
+            if (sample > lastIndex[band]) {
+                lastIndex[band] = sample;
+            }
+        }
+        else {
+            // Only negative energy can clear a sample; rescan the bounds of the band
+            nonZeroCount[band]--;
+            firstIndex[band] = -1;
+            lastIndex[band] = -1;
+            for (int i = 0; i < length; i++) {
+                if (bandEnergy[i] > 0) {
+                    if (firstIndex[band] == -1) {
+                        firstIndex[band] = i;
+                    }
+                    lastIndex[band] = i;
+                }
+            }
+        }
+    }
+
+    public int getBands() {
+        return energy.length;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isDirectional() {
+        return components != null;
+    }
+
+    /**
+     * Returns one directional component of the energy of a band.
+     *
+     * @param axis 0, 1 or 2 for the x, y or z component in world axes.
+     * @param band The band index.
+     * @return the backing array of the component; callers must not modify it.
+     * @throws IllegalStateException if the echogram is not directional.
+     */
+    public float[] getComponent(int axis, int band) {
+        if (components == null) {
+            throw new IllegalStateException("Echogram holds no directional components");
+        }
+        return components[axis][band];
+    }
+
+    /**
+     * Returns the energy of a band.
+     *
+     * @param band The band index.
+     * @return the backing array of the band; callers must not modify it.
+     */
+    public float[] getBand(int band) {
+        return energy[band];
+    }
+
+    public boolean isEmpty() {
+        for (int count : nonZeroCount) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getFirstIndex(int band) {
+        return Math.max(firstIndex[band], 0);
+    }
+
+    public int getLastIndex(int band) {
+        return Math.max(lastIndex[band], 0);
+    }
+
+    public int getNonZeroCount(int band) {
+        return nonZeroCount[band];
+    }
+
+    /**
+     * Returns the middle one of the non-zero samples of a band in time order.
+     *
+     * @param band The band index.
+     * @return the sample index of the median non-zero sample, or 0 if the band is empty.
+     */
+    public int getMedianIndex(int band) {
+        if (nonZeroCount[band] == 0) {
+            return 0;
+        }
+        if (medianIndex[band] == -1) {
+            float[] bandEnergy = energy[band];
+            int target = nonZeroCount[band] / 2;
+            int seen = 0;
+            for (int i = firstIndex[band]; i <= lastIndex[band]; i++) {
+                if (bandEnergy[i] > 0 && seen++ == target) {
+                    medianIndex[band] = i;
+                    break;
+                }
+            }
+        }
+        return medianIndex[band];
+    }
+}
@@ -0,0 +1,172 @@
+package net.fg83.rdrgen.ir;
+
+import net.fg83.rdrgen.metrics.EchogramMergeEvent;
+import net.fg83.rdrgen.trace.RayBatch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * Collects ray arrivals from many worker threads into one {@link EnergyHistogram} per thread and
+ * receiver.
+ *
+ * Workers add the arrivals of a traced batch straight into their own histograms, so there is no
+ * contention while tracing and no need to keep batches around until the end. Memory depends on
+ * the length of the impulse response, the number of bands, receivers and threads, but not on
+ * the number of rays. Once all workers are done, {@link #reduce(int)} sums the histograms of a
+ * receiver in parallel over disjoint time ranges.
+ */
+public class EnergyAccumulator {
+    private static final int REDUCE_CHUNK_SAMPLES = 4096;
+
+    private final int bands;
+    private final int receivers;
+    private final boolean directional;
+    private final List<EnergyHistogram[]> histograms = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<EnergyHistogram[]> localHistograms;
+
+    public EnergyAccumulator(int bands, int receivers) {
+        this(bands, receivers, false);
+    }
+
+    /**
+     * @param bands       The number of frequency bands.
+     * @param receivers   The number of receivers arrivals are collected for.
+     * @param directional Whether to keep the arrival directions, see {@link EnergyHistogram}.
+     */
+    public EnergyAccumulator(int bands, int receivers, boolean directional) {
+        this.bands = bands;
+        this.receivers = receivers;
+        this.directional = directional;
+        this.localHistograms = ThreadLocal.withInitial(() -> {
+            EnergyHistogram[] local = new EnergyHistogram[receivers];
+            for (int r = 0; r < receivers; r++) {
+                local[r] = new EnergyHistogram(bands, directional);
+            }
+            histograms.add(local);
+            return local;
+        });
+    }
+
+    /**
+     * Adds every arrival of a traced batch to the calling thread's histograms. The energy of an
+     * arrival comes from the opposite of the ray's direction.
+     *
+     * @param batch The traced batch.
+     */
+    public void addHits(RayBatch batch) {
+        EnergyHistogram[] local = localHistograms.get();
+        double[] energy = batch.getArrivalEnergy();
+        for (int a = 0; a < batch.getArrivalCount(); a++) {
+            EnergyHistogram histogram = local[batch.getArrivalReceiver(a)];
+            if (directional) {
+                histogram.add(batch.getArrivalDelaySamples(a), energy, batch.getArrivalEnergyOffset(a),
+                        -batch.getArrivalDirectionX(a), -batch.getArrivalDirectionY(a), -batch.getArrivalDirectionZ(a));
+            }
+            else {
+                histogram.add(batch.getArrivalDelaySamples(a), energy, batch.getArrivalEnergyOffset(a));
+            }
+        }
+    }
+
+    /**
+     * Adds a single arrival to the calling thread's histogram of a receiver.
+     *
+     * @param receiver The receiver index.
+     * @param sample   The arrival time in samples.
+     * @param energy   The array holding the arrival's energy per band.
+     * @param offset   The index of the first band in {@code energy}.
+     */
+    public void add(int receiver, int sample, double[] energy, int offset) {
+        localHistograms.get()[receiver].add(sample, energy, offset);
+    }
+
+    /**
+     * Adds a single arrival from a direction to the calling thread's histogram of a receiver.
+     *
+     * @param receiver The receiver index.
+     * @param sample   The arrival time in samples.
+     * @param energy   The array holding the arrival's energy per band.
+     * @param offset   The index of the first band in {@code energy}.
+     * @param ux       The x component of the unit vector from the receiver towards where the energy came from.
+     * @param uy       The y component.
+     * @param uz       The z component.
+     */
+    public void add(int receiver, int sample, double[] energy, int offset, double ux, double uy, double uz) {
+        localHistograms.get()[receiver].add(sample, energy, offset, ux, uy, uz);
+    }
+
+    public boolean isDirectional() {
+        return directional;
+    }
+
+    public int getReceiverCount() {
+        return receivers;
+    }
+
+    /**
+     * Returns the number of arrivals added so far over all receivers.
+     */
+    public long getHitCount() {
+        long hits = 0;
+        for (EnergyHistogram[] local : histograms) {
+            for (EnergyHistogram histogram : local) {
+                hits += histogram.getHits();
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Drops every worker histogram. The threads of a long-lived pool keep their slot of the
+     * accumulator's thread-local until they next clean up, so the histograms are emptied here to
+     * free their memory right away. The accumulator must not be used afterwards.
+     */
+    public void release() {
+        for (EnergyHistogram[] local : histograms) {
+            Arrays.fill(local, null);
+        }
+        histograms.clear();
+    }
+
+    /**
+     * Sums the worker histograms of one receiver. Must only be called after every worker has
+     * finished adding hits. The chunks are summed in parallel in the pool of the calling task, so
+     * call it from inside the worker pool rather than the common pool. Emits an {@link EchogramMergeEvent} for Java Flight Recorder.
+     *
+     * @param receiver The receiver index.
+     * @return The combined histogram.
+     */
+    public EnergyHistogram reduce(int receiver) {
+        EchogramMergeEvent event = new EchogramMergeEvent();
+        event.begin();
+        List<EnergyHistogram> receiverHistograms = histograms.stream().map(local -> local[receiver]).toList();
+        int length = 0;
+        long hits = 0;
+        for (EnergyHistogram histogram : receiverHistograms) {
+            length = Math.max(length, histogram.getLength());
+            hits += histogram.getHits();
+        }
+        EnergyHistogram combined = new EnergyHistogram(bands, directional, length);
+        int chunks = (length + REDUCE_CHUNK_SAMPLES - 1) / REDUCE_CHUNK_SAMPLES;
+        int totalLength = length;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> combined.sumRange(
+                receiverHistograms,
+                chunk * REDUCE_CHUNK_SAMPLES,
+                Math.min((chunk + 1) * REDUCE_CHUNK_SAMPLES, totalLength)
+        ));
+        combined.setTotals(length, hits);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.receiver = receiver;
+            event.histograms = receiverHistograms.size();
+            event.samples = length;
+            event.arrivals = hits;
+            event.commit();
+        }
+        return combined;
+    }
+}
@@ -0,0 +1,157 @@
+package net.fg83.rdrgen.ir;
+
+import java.util.Arrays;
+
+/**
+ * A dense time by band histogram of the energy arriving at the receiver.
+ *
+ * Bins are stored sample by sample, so the bands of sample {@code s} occupy
+ * {@code bins[s * width .. s * width + width - 1]}. The histogram grows as later arrivals are
+ * added and is written by a single thread; see {@link EnergyAccumulator} for concurrent use.
+ *
+ * A directional histogram also keeps the first-order directional components of the energy, as
+ * in B-format: next to the omnidirectional energy (W), each arrival adds its energy times the x, y
+ * and z components of the unit vector pointing back to where it came from, in world axes. Each
+ * sample then holds the bands of W, X, Y and Z one after the other.
+ */
+public final class EnergyHistogram {
+    private static final int INITIAL_SAMPLES = 1 << 14;
+
+    // Omnidirectional energy followed by the x, y and z components
+    public static final int DIRECTIONAL_CHANNELS = 4;
+
+    private final int bands;
+    private final int channels;
+    private final int width;
+    private double[] bins;
+    private int length = 0;
+    private long hits = 0;
+
+    public EnergyHistogram(int bands) {
+        this(bands, false);
+    }
+
+    /**
+     * @param bands       The number of frequency bands.
+     * @param directional Whether to keep the directional components of the energy.
+     */
+    public EnergyHistogram(int bands, boolean directional) {
+        this(bands, directional, INITIAL_SAMPLES);
+    }
+
+    public EnergyHistogram(int bands, boolean directional, int samples) {
+        this.bands = bands;
+        this.channels = directional ? DIRECTIONAL_CHANNELS : 1;
+        this.width = bands * channels;
+        this.bins = new double[Math.max(samples, 1) * width];
+    }
+
+    /**
+     * Adds the energy of one arrival without a direction. Only the omnidirectional energy grows.
+     *
+     * @param sample The arrival time in samples.
+     * @param energy The energy array holding the per-band energy of the arrival.
+     * @param offset The index of the first band in the energy array.
+     */
+    public void add(int sample, double[] energy, int offset) {
+        ensureCapacity(sample + 1);
+        int bin = sample * width;
+        for (int b = 0; b < bands; b++) {
+            bins[bin + b] += energy[offset + b];
+        }
+        length = Math.max(length, sample + 1);
+        hits++;
+    }
+
+    /**
+     * Adds the energy of one arrival from a direction. A histogram that is not directional only
+     * keeps the omnidirectional energy.
+     *
+     * @param sample The arrival time in samples.
+     * @param energy The energy array holding the per-band energy of the arrival.
+     * @param offset The index of the first band in the energy array.
+     * @param ux     The x component of the unit vector from the receiver towards where the energy came from.
+     * @param uy     The y component.
+     * @param uz     The z component.
+     */
+    public void add(int sample, double[] energy, int offset, double ux, double uy, double uz) {
+        if (channels == 1) {
+            add(sample, energy, offset);
+            return;
+        }
+        ensureCapacity(sample + 1);
+        int bin = sample * width;
+        for (int b = 0; b < bands; b++) {
+            double value = energy[offset + b];
+            bins[bin + b] += value;
+            bins[bin + bands + b] += value * ux;
+            bins[bin + 2 * bands + b] += value * uy;
+            bins[bin + 3 * bands + b] += value * uz;
+        }
+        length = Math.max(length, sample + 1);
+        hits++;
+    }
+
+    private void ensureCapacity(int samples) {
+        if (samples * width > bins.length) {
+            bins = Arrays.copyOf(bins, Math.max(samples, bins.length / width * 2) * width);
+        }
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public boolean isDirectional() {
+        return channels > 1;
+    }
+
+    /**
+     * Returns the number of samples up to and including the latest arrival.
+     *
+     * @return the length of the histogram in samples.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public double get(int sample, int band) {
+        return sample < length ? bins[sample * width + band] : 0;
+    }
+
+    /**
+     * Returns one channel of a bin of a directional histogram.
+     *
+     * @param sample  The sample index.
+     * @param channel 0 for the omnidirectional energy, or 1, 2 and 3 for its x, y and z components.
+     * @param band    The band index.
+     * @return the energy, or 0 past the end of the histogram.
+     */
+    public double get(int sample, int channel, int band) {
+        return sample < length ? bins[sample * width + channel * bands + band] : 0;
+    }
+
+    /**
+     * Sums the given range of samples of several histograms into this one. The range must lie
+     * within this histogram's capacity; disjoint ranges may be summed by different threads.
+     */
+    void sumRange(Iterable<EnergyHistogram> histograms, int fromSample, int toSample) {
+        for (EnergyHistogram histogram : histograms) {
+            int end = Math.min(toSample, histogram.length);
+            if (end > fromSample) {
+                for (int i = fromSample * width; i < end * width; i++) {
+                    bins[i] += histogram.bins[i];
+                }
+            }
+        }
+    }
+
+    void setTotals(int length, long hits) {
+        this.length = length;
+        this.hits = hits;
+    }
+}
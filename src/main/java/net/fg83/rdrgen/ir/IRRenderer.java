@@ -0,0 +1,279 @@
+package net.fg83.rdrgen.ir;
+
+import be.tarsos.dsp.AudioEvent;
+import net.fg83.rdrgen.AudioUtils;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.trace.BandSet;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns an {@link Echogram} into an impulse response waveform.
+ *
+ * Every band is smoothed, shaped by its decay envelope and noise, and band-limited, then the bands
+ * are summed and the result is cleaned up. Rendering only depends on the echogram and the band
+ * set, so it does not need a running game.
+ *
+ * A directional echogram can also be rendered as a first-order Ambisonic IR in the AmbiX
+ * convention: ACN channel order (W, Y, Z, X) with SN3D normalization, where X points ahead of the
+ * listener, Y to their left and Z up. Each directional channel is the omnidirectional waveform of a
+ * band weighted by the smoothed share of its energy along that axis, so all four channels carry
+ * the same noise and decode like the sum of plane waves the rays arrived as.
+ *
+ * The time spent smoothing, filtering and cleaning up is added to the {@link RunMetrics} of the
+ * run, when one is given.
+ *
+ * {@link #renderChannels} and {@link #writeWav} pick the output format from the echogram and save
+ * it, the way both the client and the headless runner write their IRs.
+ */
+public class IRRenderer {
+    public static final int AMBISONIC_CHANNELS = 4;
+
+    /**
+     * Renders the impulse response of an echogram.
+     *
+     * @param echogram The energy that arrived at the receiver per band and sample.
+     * @param bandSet  The frequency bands of the echogram.
+     * @return The combined, cleaned-up IR waveform.
+     * @throws RuntimeException if the echogram holds no energy.
+     */
+    public static AudioEvent render(Echogram echogram, BandSet bandSet) {
+        return render(echogram, bandSet, new RunMetrics());
+    }
+
+    /**
+     * Renders the impulse response of an echogram and records how long each step took.
+     *
+     * @param echogram The energy that arrived at the receiver per band and sample.
+     * @param bandSet  The frequency bands of the echogram.
+     * @param metrics  The metrics of the run to add the phase timings to.
+     * @return The combined, cleaned-up IR waveform.
+     * @throws RuntimeException if the echogram holds no energy.
+     */
+    public static AudioEvent render(Echogram echogram, BandSet bandSet, RunMetrics metrics) {
+        if (echogram.isEmpty()) {
+            throw new RuntimeException("No energy data available for IR generation!");
+        }
+
+        Map<Integer, AudioEvent> irBands = new LinkedHashMap<>();
+        for (int b = 0; b < bandSet.getCount(); b++) {
+            int frequencyBand = bandSet.getFrequency(b);
+            System.out.println("processing band: " + frequencyBand + "Hz");
+
+            long start = System.nanoTime();
+            AudioEvent audioEvent = AudioUtils.createAudioEventFromSamples(new float[echogram.getLength()]);
+            AudioUtils.smoothAndApplyDecay(audioEvent, echogram, b, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS, AudioUtils.SMOOTHING_NOISE_FLOOR, AudioUtils.DECAY_SCALE);
+            long smoothed = System.nanoTime();
+            applyBandFilter(audioEvent, frequencyBand, bandSet);
+            metrics.addPhaseTime(RunMetrics.Phase.SMOOTH, smoothed - start);
+            metrics.addPhaseTime(RunMetrics.Phase.FILTER, System.nanoTime() - smoothed);
+            irBands.put(frequencyBand, audioEvent);
+        }
+
+        System.out.println("Combining bands...");
+        long start = System.nanoTime();
+        AudioEvent combinedIR = AudioUtils.combineBands(irBands);
+        AudioUtils.cleanupIR(combinedIR);
+        metrics.addPhaseTime(RunMetrics.Phase.CLEANUP, System.nanoTime() - start);
+        return combinedIR;
+    }
+
+    /**
+     * Renders the first-order Ambisonic impulse response of a directional echogram.
+     *
+     * The listener faces horizontally along the given yaw, measured as Minecraft does: 0 faces
+     * south (+z) and 90 faces west (-x).
+     *
+     * @param echogram The energy and its direction that arrived at the receiver per band and sample.
+     * @param bandSet  The frequency bands of the echogram.
+     * @param yaw      The yaw of the listener in degrees.
+     * @return The W, Y, Z and X channels, cleaned up together so they stay aligned.
+     * @throws RuntimeException if the echogram holds no energy.
+     * @throws IllegalStateException if the echogram is not directional.
+     */
+    public static AudioEvent[] renderAmbisonic(Echogram echogram, BandSet bandSet, float yaw) {
+        return renderAmbisonic(echogram, bandSet, yaw, new RunMetrics());
+    }
+
+    /**
+     * Renders the first-order Ambisonic impulse response of a directional echogram and records how
+     * long each step took.
+     *
+     * @param echogram The energy and its direction that arrived at the receiver per band and sample.
+     * @param bandSet  The frequency bands of the echogram.
+     * @param yaw      The yaw of the listener in degrees.
+     * @param metrics  The metrics of the run to add the phase timings to.
+     * @return The W, Y, Z and X channels, cleaned up together so they stay aligned.
+     * @throws RuntimeException if the echogram holds no energy.
+     * @throws IllegalStateException if the echogram is not directional.
+     */
+    public static AudioEvent[] renderAmbisonic(Echogram echogram, BandSet bandSet, float yaw, RunMetrics metrics) {
+        if (echogram.isEmpty()) {
+            throw new RuntimeException("No energy data available for IR generation!");
+        }
+
+        // Listener axes in world coordinates: ahead, to the left, and up
+        double radians = Math.toRadians(yaw);
+        double forwardX = -Math.sin(radians);
+        double forwardZ = Math.cos(radians);
+        double leftX = forwardZ;
+        double leftZ = -forwardX;
+
+        List<Map<Integer, AudioEvent>> irBands = new ArrayList<>();
+        for (int c = 0; c < AMBISONIC_CHANNELS; c++) {
+            irBands.add(new LinkedHashMap<>());
+        }
+        int length = echogram.getLength();
+        for (int b = 0; b < bandSet.getCount(); b++) {
+            int frequencyBand = bandSet.getFrequency(b);
+            System.out.println("processing band: " + frequencyBand + "Hz");
+
+            long start = System.nanoTime();
+            AudioEvent omni = AudioUtils.createAudioEventFromSamples(new float[length]);
+            AudioUtils.smoothAndApplyDecay(omni, echogram, b, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS, AudioUtils.SMOOTHING_NOISE_FLOOR, AudioUtils.DECAY_SCALE);
+
+            float[] worldX = echogram.getComponent(0, b);
+            float[] worldY = echogram.getComponent(1, b);
+            float[] worldZ = echogram.getComponent(2, b);
+            float[] ahead = new float[length];
+            float[] left = new float[length];
+            for (int i = 0; i < length; i++) {
+                ahead[i] = (float) (forwardX * worldX[i] + forwardZ * worldZ[i]);
+                left[i] = (float) (leftX * worldX[i] + leftZ * worldZ[i]);
+            }
+            // ACN order: W, Y (left), Z (up), X (ahead)
+            float[][] components = {left, worldY, ahead};
+
+            float[] omniSamples = omni.getFloatBuffer();
+            AudioEvent[] bandChannels = new AudioEvent[AMBISONIC_CHANNELS];
+            bandChannels[0] = omni;
+            for (int c = 1; c < AMBISONIC_CHANNELS; c++) {
+                float[] gain = AudioUtils.calculateDirectionalGain(echogram.getBand(b), components[c - 1], length, AudioUtils.DIFFUSION_ALPHA, AudioUtils.SMOOTHING_ITERATIONS);
+                for (int i = 0; i < length; i++) {
+                    gain[i] *= omniSamples[i];
+                }
+                bandChannels[c] = AudioUtils.createAudioEventFromSamples(gain);
+            }
+            long smoothed = System.nanoTime();
+            for (int c = 0; c < AMBISONIC_CHANNELS; c++) {
+                applyBandFilter(bandChannels[c], frequencyBand, bandSet);
+                irBands.get(c).put(frequencyBand, bandChannels[c]);
+            }
+            metrics.addPhaseTime(RunMetrics.Phase.SMOOTH, smoothed - start);
+            metrics.addPhaseTime(RunMetrics.Phase.FILTER, System.nanoTime() - smoothed);
+        }
+
+        System.out.println("Combining bands...");
+        long start = System.nanoTime();
+        AudioEvent[] channels = new AudioEvent[AMBISONIC_CHANNELS];
+        for (int c = 0; c < AMBISONIC_CHANNELS; c++) {
+            channels[c] = AudioUtils.combineBands(irBands.get(c));
+        }
+        AudioUtils.cleanupIR(channels);
+        metrics.addPhaseTime(RunMetrics.Phase.CLEANUP, System.nanoTime() - start);
+        return channels;
+    }
+
+    /**
+     * Renders the impulse response of an echogram in the format it supports: first-order Ambisonics
+     * for a directional echogram, otherwise mono.
+     *
+     * @param echogram The energy that arrived at the receiver per band and sample.
+     * @param bandSet  The frequency bands of the echogram.
+     * @param yaw      The yaw of the listener in degrees, which orients an Ambisonic IR.
+     * @param metrics  The metrics of the run to add the phase timings to.
+     * @return the channels of the IR, one for mono and {@link #AMBISONIC_CHANNELS} for Ambisonics.
+     * @throws RuntimeException if the echogram holds no energy.
+     */
+    public static AudioEvent[] renderChannels(Echogram echogram, BandSet bandSet, float yaw, RunMetrics metrics) {
+        if (echogram.isDirectional()) {
+            return renderAmbisonic(echogram, bandSet, yaw, metrics);
+        }
+        return new AudioEvent[]{render(echogram, bandSet, metrics)};
+    }
+
+    /**
+     * Returns the file name of an IR of a run.
+     *
+     * @param outputName The base file name shared by the files of a run.
+     * @param label      A suffix that tells the files of a receiver grid apart, or {@code null} for a single receiver.
+     * @param channels   The number of channels of the IR.
+     * @return the file name, with extension.
+     */
+    public static String getFileName(String outputName, String label, int channels) {
+        return outputName + (label != null ? "_" + label : "") + (channels == AMBISONIC_CHANNELS ? "_AmbiX" : "") + ".wav";
+    }
+
+    /**
+     * Writes the channels of an IR to a WAV file and records how long it took.
+     *
+     * @param path     The file to write.
+     * @param channels The channels of the IR, see {@link #renderChannels}.
+     * @param metrics  The metrics of the run to add the writing time to.
+     */
+    public static void writeWav(Path path, AudioEvent[] channels, RunMetrics metrics) {
+        long start = System.nanoTime();
+        if (channels.length == 1) {
+            AudioUtils.writeWavFile(path.toString(), channels[0]);
+        }
+        else {
+            AudioUtils.writeWavFile(path.toString(), channels);
+        }
+        metrics.addPhaseTime(RunMetrics.Phase.WRITE, System.nanoTime() - start);
+    }
+
+    /**
+     * Band-limits the waveform of one frequency band before the bands are combined.
+     *
+     * Octave bands use the filters the generator has always used. Third-octave bands are bandpass
+     * filtered between their edges, except the lowest band, which is lowpass filtered, and the
+     * highest, which is highpass filtered.
+     *
+     * @param audioEvent    The waveform of the band.
+     * @param frequencyBand The center frequency of the band.
+     * @param bandSet       The band set the band belongs to.
+     */
+    private static void applyBandFilter(AudioEvent audioEvent, int frequencyBand, BandSet bandSet) {
+        if (bandSet.getResolution() == BandSet.Resolution.THIRD_OCTAVE) {
+            double upperEdge = frequencyBand * Math.pow(2, 1.0 / 6);
+            double lowerEdge = frequencyBand / Math.pow(2, 1.0 / 6);
+            if (frequencyBand == bandSet.getFrequency(0)) {
+                AudioUtils.applyLowpassFilter(audioEvent, upperEdge, AudioUtils.SAMPLE_RATE);
+            }
+            else if (frequencyBand == bandSet.getFrequency(bandSet.getCount() - 1)) {
+                AudioUtils.applyHighpassFilter(audioEvent, lowerEdge, AudioUtils.SAMPLE_RATE);
+            }
+            else {
+                AudioUtils.applyBandpassFilter(audioEvent, frequencyBand, upperEdge - lowerEdge, AudioUtils.SAMPLE_RATE);
+            }
+            return;
+        }
+
+        switch (frequencyBand){
+            case 125:
+                AudioUtils.applyLowpassFilter(audioEvent, 125, AudioUtils.SAMPLE_RATE);
+                break;
+            case 250:
+                AudioUtils.applyLowpassFilter(audioEvent, 250, AudioUtils.SAMPLE_RATE);
+                AudioUtils.applyHighpassFilter(audioEvent, 125, AudioUtils.SAMPLE_RATE);
+                break;
+            case 2000:
+                AudioUtils.applyHighpassFilter(audioEvent, 2000, AudioUtils.SAMPLE_RATE);
+                AudioUtils.applyLowpassFilter(audioEvent, 4000, AudioUtils.SAMPLE_RATE);
+                break;
+            case 4000:
+                AudioUtils.applyHighpassFilter(audioEvent, 4000, AudioUtils.SAMPLE_RATE);
+                break;
+            default:
+                int freqMax = frequencyBand * 2;
+                int freqMin = frequencyBand / 2;
+                double centerFreq = (double) (freqMax + freqMin) / 2;
+                double bandwidth = freqMax - freqMin;
+                AudioUtils.applyBandpassFilter(audioEvent, centerFreq, bandwidth, AudioUtils.SAMPLE_RATE);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package net.fg83.rdrgen.ir;
+
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.trace.EnergyKernel;
+import net.fg83.rdrgen.trace.RayBatch;
+import net.fg83.rdrgen.trace.TraceContext;
+import net.fg83.rdrgen.trace.VoxelHit;
+import net.fg83.rdrgen.trace.VoxelTraversal;
+import net.fg83.rdrgen.volume.AcousticVolume;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the direct sound and the early specular reflections around the source exactly with the
+ * image-source method.
+ *
+ * Every block face in the captured volume is axis-aligned, so the reflecting surfaces are the
+ * integer planes holding at least one exposed face within {@code radius} blocks of the source.
+ * The source is mirrored across every sequence of up to {@code maxOrder} planes, skipping planes
+ * the current image lies behind. A sequence is a valid reflection path to a receiver when, walking
+ * back from the receiver towards each image, every reflection point lies on an exposed face of its
+ * plane inside the search cube, and every leg of the path is unobstructed in the voxel grid. The
+ * images are shared by all receivers; only the validation runs once per receiver.
+ *
+ * Each valid path contributes the energy a ray tracer would collect for it: the share of rays
+ * that would hit the receiver sphere from the image's distance, at the echogram's reference ray
+ * count, times the absorption of every reflecting block and of the air along the path, and the
+ * specular share {@code (1 - scattering)} of every reflection. The ray
+ * tracer skips the paths found here, see {@link TraceContext#getImageSourceOrder()}. Unlike a ray
+ * at a single absorbing receiver, a path may pass through a receiver between reflections, as a
+ * listener does not block sound.
+ * A reflection on the edge between two blocks is kept once, even though both planes lead to it.
+ * Paths arrive from the direction of their last image, which a directional solver records too.
+ *
+ * Searches starting from different first planes run in parallel; the cost grows with the number
+ * of planes to the power of the order.
+ */
+public class ImageSourceSolver {
+    // Tolerance for visibility checks so a leg ending exactly on the reflecting face is not reported as blocked
+    private static final double VISIBILITY_EPSILON = 1e-5;
+    // Tolerance for reflection points that lie on a block edge, where two planes meet
+    private static final double EDGE_EPSILON = 1e-9;
+
+    private final TraceContext context;
+    private final BandSet bandSet;
+    private final int maxOrder;
+    private final double radius;
+    private final boolean directional;
+
+    // Candidate planes: axis (0 = x, 1 = y, 2 = z), integer coordinate, and the side (+1 or -1) the exposed faces point to
+    private final int[] planeAxis;
+    private final int[] planeCoordinate;
+    private final int[] planeSide;
+
+    /**
+     * Collects the candidate planes around the source.
+     *
+     * @param context     The resolved volume, receiver and attenuation data.
+     * @param bandSet     The frequency bands of the material and air attenuation in the context.
+     * @param maxOrder    The highest reflection order to compute.
+     * @param radius      Half the edge length of the cube around the source reflections must lie in.
+     * @param directional Whether to record the direction every path arrives from, see {@link EnergyHistogram}.
+     */
+    public ImageSourceSolver(TraceContext context, BandSet bandSet, int maxOrder, double radius, boolean directional) {
+        this.context = context;
+        this.bandSet = bandSet;
+        this.maxOrder = maxOrder;
+        this.radius = radius;
+        this.directional = directional;
+
+        AcousticVolume volume = context.getVolume();
+        double[] source = {context.getSourceX(), context.getSourceY(), context.getSourceZ()};
+        int[] min = new int[3];
+        int[] max = new int[3];
+        for (int a = 0; a < 3; a++) {
+            min[a] = (int) Math.floor(source[a] - radius) - 1;
+            max[a] = (int) Math.floor(source[a] + radius) + 1;
+        }
+
+        Set<Long> planes = new HashSet<>();
+        int[] cell = new int[3];
+        for (cell[1] = min[1]; cell[1] <= max[1]; cell[1]++) {
+            for (cell[2] = min[2]; cell[2] <= max[2]; cell[2]++) {
+                for (cell[0] = min[0]; cell[0] <= max[0]; cell[0]++) {
+                    if (volume.isEmpty(cell[0], cell[1], cell[2])) {
+                        continue;
+                    }
+                    for (int a = 0; a < 3; a++) {
+                        for (int side = -1; side <= 1; side += 2) {
+                            int nx = cell[0] + (a == 0 ? side : 0);
+                            int ny = cell[1] + (a == 1 ? side : 0);
+                            int nz = cell[2] + (a == 2 ? side : 0);
+                            if (volume.isEmpty(nx, ny, nz)) {
+                                int coordinate = side > 0 ? cell[a] + 1 : cell[a];
+                                planes.add(packPlane(a, coordinate, side));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        long[] packed = planes.stream().mapToLong(Long::longValue).sorted().toArray();
+        planeAxis = new int[packed.length];
+        planeCoordinate = new int[packed.length];
+        planeSide = new int[packed.length];
+        for (int p = 0; p < packed.length; p++) {
+            planeAxis[p] = (int) (packed[p] >>> 40) & 3;
+            planeSide[p] = ((packed[p] >>> 32) & 1) == 1 ? 1 : -1;
+            planeCoordinate[p] = (int) packed[p];
+        }
+    }
+
+    private static long packPlane(int axis, int coordinate, int side) {
+        return ((long) axis << 40) | ((long) (side > 0 ? 1 : 0) << 32) | (coordinate & 0xFFFFFFFFL);
+    }
+
+    public int getPlaneCount() {
+        return planeAxis.length;
+    }
+
+    /**
+     * Finds every valid reflection path up to the maximum order, for every receiver. The planes are
+     * searched in parallel in the pool of the calling task, so call it from inside the worker pool.
+     *
+     * @return Per receiver, a histogram of the arriving energy, already at the echogram's reference ray count.
+     */
+    public EnergyHistogram[] solve() {
+        int receivers = context.getReceiverCount();
+        EnergyAccumulator accumulator = new EnergyAccumulator(bandSet.getCount(), receivers, directional);
+        if (maxOrder > 0) {
+            new PathSearch(accumulator).searchDirect();
+            IntStream.range(0, planeAxis.length).parallel().forEach(plane -> new PathSearch(accumulator).searchFrom(plane));
+        }
+        EnergyHistogram[] histograms = new EnergyHistogram[receivers];
+        for (int r = 0; r < receivers; r++) {
+            histograms[r] = accumulator.reduce(r);
+        }
+        accumulator.release();
+        return histograms;
+    }
+
+    /**
+     * Depth-first search over plane sequences starting with one plane. Holds the scratch state of
+     * one thread, so the search itself does not allocate.
+     */
+    private class PathSearch {
+        private final EnergyAccumulator accumulator;
+        private final EnergyKernel kernel = bandSet.getKernel();
+        private final double[][] images = new double[maxOrder + 1][3];
+        private final int[] planes = new int[maxOrder];
+        private final double[] point = new double[3];
+        private final double[] next = new double[3];
+        private final double[] receiver = new double[3];
+        private final int[] cell = new int[3];
+        private final double[] energy = new double[bandSet.getStride()];
+        private final VoxelHit hit = new VoxelHit();
+
+        PathSearch(EnergyAccumulator accumulator) {
+            this.accumulator = accumulator;
+            images[0][0] = context.getSourceX();
+            images[0][1] = context.getSourceY();
+            images[0][2] = context.getSourceZ();
+        }
+
+        /**
+         * Records the direct sound at every receiver the source can see. A receiver whose sphere
+         * holds the source hears no direct sound, as rays start inside it.
+         */
+        void searchDirect() {
+            double[] receivers = context.getReceiverPositions();
+            for (int r = 0; r < context.getReceiverCount(); r++) {
+                System.arraycopy(receivers, 3 * r, receiver, 0, 3);
+                if (distance(receiver, images[0]) > context.getReceiverRadius()) {
+                    recordIfValid(0, r);
+                }
+            }
+        }
+
+        void searchFrom(int plane) {
+            if (isInFront(images[0], plane)) {
+                visit(1, plane);
+            }
+        }
+
+        private void visit(int order, int plane) {
+            planes[order - 1] = plane;
+            double[] image = images[order];
+            System.arraycopy(images[order - 1], 0, image, 0, 3);
+            int axis = planeAxis[plane];
+            image[axis] = 2 * planeCoordinate[plane] - image[axis];
+
+            double[] receivers = context.getReceiverPositions();
+            for (int r = 0; r < context.getReceiverCount(); r++) {
+                System.arraycopy(receivers, 3 * r, receiver, 0, 3);
+                recordIfValid(order, r);
+            }
+
+            if (order < maxOrder) {
+                for (int p = 0; p < planeAxis.length; p++) {
+                    if (p != plane && isInFront(image, p)) {
+                        visit(order + 1, p);
+                    }
+                }
+            }
+        }
+
+        private boolean isInFront(double[] position, int plane) {
+            return planeSide[plane] * (position[planeAxis[plane]] - planeCoordinate[plane]) > 0;
+        }
+
+        /**
+         * Walks back from the current receiver towards the images of a plane sequence and records
+         * the path's energy if every reflection point and leg, up to the source, is valid.
+         */
+        private void recordIfValid(int order, int receiverIndex) {
+            if (order > 0 && !isInFront(receiver, planes[order - 1])) {
+                return;
+            }
+            double[] image = images[order];
+            double length = distance(receiver, image);
+
+            Arrays.fill(energy, 0, bandSet.getCount(), 1.0);
+            System.arraycopy(receiver, 0, point, 0, 3);
+            for (int k = order; k >= 1; k--) {
+                int plane = planes[k - 1];
+                int axis = planeAxis[plane];
+                double[] target = images[k];
+                double t = (planeCoordinate[plane] - point[axis]) / (target[axis] - point[axis]);
+                if (!(t > -EDGE_EPSILON && t < 1)) {
+                    return;
+                }
+                // t of 0 means the previous reflection was on the edge this plane shares with the last one.
+                // Both orders of the two planes describe that same path, so only one of them counts.
+                if (t < EDGE_EPSILON && k < order && plane > planes[k]) {
+                    return;
+                }
+                for (int a = 0; a < 3; a++) {
+                    next[a] = snapToEdge(point[a] + (target[a] - point[a]) * Math.max(t, 0));
+                }
+                next[axis] = planeCoordinate[plane];
+
+                int material = exposedFaceMaterial(plane, next);
+                if (material == AcousticVolume.EMPTY || !isVisible(point, next)) {
+                    return;
+                }
+                kernel.multiply(energy, 0, context.getMaterialAttenuation(), material * bandSet.getStride());
+                // Only the specular share of the reflection follows the path; rays rain the scattered rest
+                double[] scattering = context.getMaterialScattering();
+                for (int b = 0; b < bandSet.getCount(); b++) {
+                    energy[b] *= 1 - scattering[material * bandSet.getStride() + b];
+                }
+                System.arraycopy(next, 0, point, 0, 3);
+            }
+            if (!isVisible(point, images[0])) {
+                return;
+            }
+
+            kernel.attenuate(energy, 0, context.getLogAirAttenuation(), length);
+            double share = receiverShare(length, context.getReceiverRadius()) * Echogram.REFERENCE_RAY_COUNT;
+            for (int b = 0; b < bandSet.getCount(); b++) {
+                energy[b] *= share;
+            }
+            // Every path reaches the receiver along the straight line from its last image
+            accumulator.add(receiverIndex, (int) Math.round(length * RayBatch.SAMPLES_PER_BLOCK), energy, 0,
+                    (image[0] - receiver[0]) / length, (image[1] - receiver[1]) / length, (image[2] - receiver[2]) / length);
+        }
+
+        /**
+         * Returns the material of the block behind a reflection point, or {@link AcousticVolume#EMPTY}
+         * if the point is outside the search cube or not on an exposed face of the plane. A point on
+         * a block edge touches the faces of two blocks along the other axis, and either may reflect.
+         */
+        private int exposedFaceMaterial(int plane, double[] position) {
+            for (int a = 0; a < 3; a++) {
+                if (Math.abs(position[a] - images[0][a]) > radius) {
+                    return AcousticVolume.EMPTY;
+                }
+            }
+            int axis = planeAxis[plane];
+            int first = (axis + 1) % 3;
+            int second = (axis + 2) % 3;
+            for (int i = 0; i < 2; i++) {
+                cell[first] = edgeCell(position[first], i);
+                for (int j = 0; j < 2; j++) {
+                    cell[second] = edgeCell(position[second], j);
+                    int material = faceMaterial(plane, cell);
+                    if (material != AcousticVolume.EMPTY) {
+                        return material;
+                    }
+                    if (!isInteger(position[second])) {
+                        break;
+                    }
+                }
+                if (!isInteger(position[first])) {
+                    break;
+                }
+            }
+            return AcousticVolume.EMPTY;
+        }
+
+        /**
+         * Returns the material of the solid block behind the plane at the given cell, or
+         * {@link AcousticVolume#EMPTY} if that face is not exposed.
+         */
+        private int faceMaterial(int plane, int[] cell) {
+            int axis = planeAxis[plane];
+            int coordinate = planeCoordinate[plane];
+            AcousticVolume volume = context.getVolume();
+            cell[axis] = planeSide[plane] > 0 ? coordinate : coordinate - 1;
+            if (!volume.isEmpty(cell[0], cell[1], cell[2])) {
+                return AcousticVolume.EMPTY;
+            }
+            cell[axis] = planeSide[plane] > 0 ? coordinate - 1 : coordinate;
+            return volume.getMaterial(cell[0], cell[1], cell[2]);
+        }
+
+        private boolean isVisible(double[] from, double[] to) {
+            double length = distance(from, to);
+            if (length <= VISIBILITY_EPSILON) {
+                return true;
+            }
+            double dx = (to[0] - from[0]) / length;
+            double dy = (to[1] - from[1]) / length;
+            double dz = (to[2] - from[2]) / length;
+            return !VoxelTraversal.cast(context.getVolume(), from[0], from[1], from[2], dx, dy, dz, length, hit)
+                    || hit.distance >= length - VISIBILITY_EPSILON;
+        }
+    }
+
+    private static double snapToEdge(double value) {
+        double rounded = Math.rint(value);
+        return Math.abs(value - rounded) < EDGE_EPSILON ? rounded : value;
+    }
+
+    private static boolean isInteger(double value) {
+        return value == Math.rint(value);
+    }
+
+    /**
+     * Returns the cell containing a coordinate, or for a coordinate on a block boundary, the cell
+     * below it when {@code lower} is 1.
+     */
+    private static int edgeCell(double value, int lower) {
+        int cell = (int) Math.floor(value);
+        return isInteger(value) ? cell - lower : cell;
+    }
+
+    /**
+     * Returns the share of uniformly cast rays that enter a sphere of the given radius at the
+     * given distance, which is the solid angle of the sphere over that of the full sphere.
+     */
+    private static double receiverShare(double distance, double radius) {
+        if (distance <= radius) {
+            return 0.5;
+        }
+        double ratio = radius / distance;
+        return (1 - Math.sqrt(1 - ratio * ratio)) / 2;
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        double dz = b[2] - a[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
@@ -0,0 +1,105 @@
+package net.fg83.rdrgen.material;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps block identifiers such as {@code minecraft:oak_planks} to {@link MaterialTable} indices
+ * without the game's registries, for reading world saves outside the client.
+ *
+ * It mirrors {@link BlockStateMaterials} as closely as identifiers allow. Air and fluids resolve
+ * to {@link MaterialTable#EMPTY}. Otherwise the identifier is looked up in the block map, and
+ * unmapped blocks fall back to the first entry of {@link #NAME_FALLBACKS} their path ends with,
+ * standing in for the block tags the client matches. Anything else becomes
+ * {@link MaterialTable#UNKNOWN}. Other blocks without an outline shape, which the client treats
+ * as empty, cannot be told apart by name and are mapped like any other block.
+ *
+ * Resolved identifiers are cached, so a palette entry costs one map lookup.
+ */
+public class BlockNameMaterials {
+    private static final Set<String> EMPTY_BLOCKS = Set.of(
+            "minecraft:air", "minecraft:cave_air", "minecraft:void_air",
+            "minecraft:water", "minecraft:lava", "minecraft:bubble_column", "minecraft:light"
+    );
+    private static final Map<String, String> NAME_FALLBACKS = new LinkedHashMap<>();
+
+    static {
+        NAME_FALLBACKS.put("_log", "log");
+        NAME_FALLBACKS.put("_wood", "log");
+        NAME_FALLBACKS.put("_stem", "log");
+        NAME_FALLBACKS.put("_hyphae", "log");
+        NAME_FALLBACKS.put("_planks", "planks");
+        NAME_FALLBACKS.put("_leaves", "leaves");
+        NAME_FALLBACKS.put("_carpet", "carpet");
+        NAME_FALLBACKS.put("_wool", "wooly");
+        NAME_FALLBACKS.put("_trapdoor", "wood_gap");
+        NAME_FALLBACKS.put("_door", "wood_gap");
+        NAME_FALLBACKS.put("_fence", "wood_post");
+        NAME_FALLBACKS.put("_hanging_sign", "hanging_sign");
+        NAME_FALLBACKS.put("_sign", "sign");
+        NAME_FALLBACKS.put("_banner", "banner");
+        NAME_FALLBACKS.put("_bed", "bed");
+        NAME_FALLBACKS.put("rail", "rail");
+        NAME_FALLBACKS.put("_sapling", "plant");
+        NAME_FALLBACKS.put("_tulip", "plant");
+        NAME_FALLBACKS.put("_coral_block", "coral");
+        NAME_FALLBACKS.put("snow", "snowy");
+        NAME_FALLBACKS.put("sand", "sandy");
+        NAME_FALLBACKS.put("dirt", "dirt");
+        NAME_FALLBACKS.put("_bricks", "brick");
+        NAME_FALLBACKS.put("_wall", "stone");
+        NAME_FALLBACKS.put("stone", "stone");
+        NAME_FALLBACKS.put("deepslate", "stone");
+        NAME_FALLBACKS.put("terracotta", "stone");
+        NAME_FALLBACKS.put("netherrack", "stone");
+    }
+
+    private final MaterialTable materialTable;
+    private final Map<String, Integer> blockMaterials = new ConcurrentHashMap<>();
+
+    /**
+     * @param materialTable The materials to resolve against.
+     */
+    public BlockNameMaterials(MaterialTable materialTable) {
+        this.materialTable = materialTable;
+    }
+
+    /**
+     * Returns the material index of a block.
+     *
+     * @param blockId The block identifier, with or without the {@code minecraft:} namespace.
+     * @return The {@link MaterialTable} index of the block.
+     */
+    public int getMaterial(String blockId) {
+        return blockMaterials.computeIfAbsent(blockId, this::resolve);
+    }
+
+    public MaterialTable getMaterialTable() {
+        return materialTable;
+    }
+
+    private int resolve(String blockId) {
+        String id = blockId.indexOf(':') == -1 ? "minecraft:" + blockId : blockId;
+        if (EMPTY_BLOCKS.contains(id)) {
+            return MaterialTable.EMPTY;
+        }
+
+        int material = materialTable.getBlockMaterial(id);
+        if (material != -1) {
+            return material;
+        }
+
+        String path = id.substring(id.indexOf(':') + 1);
+        for (Map.Entry<String, String> fallback : NAME_FALLBACKS.entrySet()) {
+            if (path.endsWith(fallback.getKey())) {
+                material = materialTable.getMaterialIndex(fallback.getValue());
+                if (material != -1) {
+                    return material;
+                }
+            }
+        }
+        return MaterialTable.UNKNOWN;
+    }
+}
@@ -0,0 +1,126 @@
+package net.fg83.rdrgen.material;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.tag.BlockTags;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.EmptyBlockView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps every block state raw ID to a {@link MaterialTable} index.
+ *
+ * The table is built once the block registry is frozen and tags are bound, and covers every
+ * registered block state, including modded ones. Resolving the material of a captured block is
+ * then a single array load.
+ *
+ * A state resolves to {@link MaterialTable#EMPTY} if rays pass through it. Otherwise its block
+ * identifier is looked up in the block map. Blocks that are not mapped, such as most modded
+ * blocks, fall back to the first matching entry in {@link #TAG_FALLBACKS}. Anything else becomes
+ * {@link MaterialTable#UNKNOWN}.
+ */
+public class BlockStateMaterials {
+    private static final Map<TagKey<Block>, String> TAG_FALLBACKS = new LinkedHashMap<>();
+
+    static {
+        TAG_FALLBACKS.put(BlockTags.LOGS, "log");
+        TAG_FALLBACKS.put(BlockTags.PLANKS, "planks");
+        TAG_FALLBACKS.put(BlockTags.LEAVES, "leaves");
+        TAG_FALLBACKS.put(BlockTags.WOOL_CARPETS, "carpet");
+        TAG_FALLBACKS.put(BlockTags.WOOL, "wooly");
+        TAG_FALLBACKS.put(BlockTags.WOODEN_DOORS, "wood_gap");
+        TAG_FALLBACKS.put(BlockTags.WOODEN_TRAPDOORS, "wood_gap");
+        TAG_FALLBACKS.put(BlockTags.FENCES, "wood_post");
+        TAG_FALLBACKS.put(BlockTags.ALL_HANGING_SIGNS, "hanging_sign");
+        TAG_FALLBACKS.put(BlockTags.SIGNS, "sign");
+        TAG_FALLBACKS.put(BlockTags.BANNERS, "banner");
+        TAG_FALLBACKS.put(BlockTags.BEDS, "bed");
+        TAG_FALLBACKS.put(BlockTags.RAILS, "rail");
+        TAG_FALLBACKS.put(BlockTags.SAPLINGS, "plant");
+        TAG_FALLBACKS.put(BlockTags.FLOWERS, "plant");
+        TAG_FALLBACKS.put(BlockTags.CROPS, "plant");
+        TAG_FALLBACKS.put(BlockTags.CORAL_BLOCKS, "coral");
+        TAG_FALLBACKS.put(BlockTags.SNOW, "snowy");
+        TAG_FALLBACKS.put(BlockTags.SAND, "sandy");
+        TAG_FALLBACKS.put(BlockTags.DIRT, "dirt");
+        TAG_FALLBACKS.put(BlockTags.STONE_BRICKS, "brick");
+        TAG_FALLBACKS.put(BlockTags.WALLS, "stone");
+        TAG_FALLBACKS.put(BlockTags.BASE_STONE_OVERWORLD, "stone");
+        TAG_FALLBACKS.put(BlockTags.BASE_STONE_NETHER, "stone");
+        TAG_FALLBACKS.put(BlockTags.TERRACOTTA, "stone");
+        TAG_FALLBACKS.put(BlockTags.BEACON_BASE_BLOCKS, "metal");
+    }
+
+    private final MaterialTable materialTable;
+    private final int[] stateMaterials;
+
+    private BlockStateMaterials(MaterialTable materialTable, int[] stateMaterials) {
+        this.materialTable = materialTable;
+        this.stateMaterials = stateMaterials;
+    }
+
+    /**
+     * Resolves the material of every registered block state. Must be called after the block
+     * registry is frozen and block tags are bound, otherwise tag fallbacks will not match.
+     *
+     * @param materialTable The materials to resolve against.
+     * @return The state-to-material table.
+     */
+    public static BlockStateMaterials build(MaterialTable materialTable) {
+        int[] stateMaterials = new int[Block.STATE_IDS.size()];
+        for (BlockState state : Block.STATE_IDS) {
+            stateMaterials[Block.STATE_IDS.getRawId(state)] = resolve(materialTable, state);
+        }
+        return new BlockStateMaterials(materialTable, stateMaterials);
+    }
+
+    private static int resolve(MaterialTable materialTable, BlockState state) {
+        if (isAcousticallyEmpty(state)) {
+            return MaterialTable.EMPTY;
+        }
+
+        int material = materialTable.getBlockMaterial(Registries.BLOCK.getId(state.getBlock()).toString());
+        if (material != -1) {
+            return material;
+        }
+
+        for (Map.Entry<TagKey<Block>, String> fallback : TAG_FALLBACKS.entrySet()) {
+            if (state.isIn(fallback.getKey())) {
+                material = materialTable.getMaterialIndex(fallback.getValue());
+                if (material != -1) {
+                    return material;
+                }
+            }
+        }
+        return MaterialTable.UNKNOWN;
+    }
+
+    /**
+     * Determines whether rays pass through a block state, mirroring an outline raycast that
+     * ignores fluids.
+     *
+     * @param state The block state to test.
+     * @return true if the state has no outline shape.
+     */
+    private static boolean isAcousticallyEmpty(BlockState state) {
+        return state.isAir() || state.getOutlineShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN).isEmpty();
+    }
+
+    /**
+     * Returns the material index of a block state.
+     *
+     * @param stateId The block state raw ID.
+     * @return The {@link MaterialTable} index of the state.
+     */
+    public int getMaterial(int stateId) {
+        return stateMaterials[stateId];
+    }
+
+    public MaterialTable getMaterialTable() {
+        return materialTable;
+    }
+}
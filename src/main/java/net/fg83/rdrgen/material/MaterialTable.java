@@ -0,0 +1,202 @@
+package net.fg83.rdrgen.material;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.fg83.rdrgen.AbsorptionCoefficient;
+import net.fg83.rdrgen.trace.BandSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The set of acoustic materials and the blocks that use them.
+ *
+ * Every material has a dense index. Its per-band energy factors {@code (1 - coef)} are stored in
+ * one flat array, so the factors of material {@code m} start at {@code attenuation[m * stride]},
+ * where the stride is that of the {@link BandSet} the table was loaded for. Two indices are reserved:
+ * {@link #EMPTY} for voxels rays pass through, and {@link #UNKNOWN} for solid blocks without
+ * absorption data, which reflect without loss. Both have factors of 1.0, so tracing code can
+ * apply any index without branching.
+ *
+ * Materials also have per-band scattering coefficients, the share of reflected energy that is
+ * scattered diffusely rather than reflected specularly, laid out the same way. Materials without
+ * scattering data, and both reserved indices, reflect purely specularly.
+ *
+ * The table is built from {@code coefficient_sets.json} and {@code item_map.json}. It does not
+ * depend on the game registries, so captured volumes can be traced outside the client as well.
+ */
+public final class MaterialTable {
+    public static final int EMPTY = 0;
+    public static final int UNKNOWN = 1;
+
+    private static final String SCATTERING_KEY = "scattering";
+
+    private final BandSet bandSet;
+    private final List<String> names;
+    private final double[] attenuation;
+    private final double[] scattering;
+    private final Map<String, Integer> materialIndices;
+    private final Map<String, Integer> blockMaterials;
+
+    private MaterialTable(BandSet bandSet, List<String> names, double[] attenuation, double[] scattering, Map<String, Integer> materialIndices, Map<String, Integer> blockMaterials) {
+        this.bandSet = bandSet;
+        this.names = names;
+        this.attenuation = attenuation;
+        this.scattering = scattering;
+        this.materialIndices = materialIndices;
+        this.blockMaterials = blockMaterials;
+    }
+
+    /**
+     * Loads the material table from the coefficient set and block map resources.
+     *
+     * The coefficient sets are a JSON object of material names to frequency-to-coefficient
+     * objects. Sets may give coefficients at octave or third-octave frequencies; they are
+     * interpolated onto the bands of the band set. A set may also hold a {@code scattering} object
+     * of frequency-to-scattering-coefficient entries, interpolated the same way. The block map is a JSON array of objects with a
+     * {@code block} identifier and the name of its {@code coefficients} set. Blocks that name an
+     * unknown set are ignored.
+     *
+     * @param coefficientSets A stream of {@code coefficient_sets.json}.
+     * @param itemMap         A stream of {@code item_map.json}.
+     * @param bandSet         The frequency bands to resolve coefficients for.
+     * @return The loaded table.
+     */
+    public static MaterialTable load(InputStream coefficientSets, InputStream itemMap, BandSet bandSet) {
+        List<String> names = new ArrayList<>(List.of("empty", "unknown"));
+        List<double[]> rows = new ArrayList<>();
+        rows.add(bandSet.toAttenuation(List.of()));
+        rows.add(bandSet.toAttenuation(List.of()));
+        List<double[]> scatteringRows = new ArrayList<>();
+        scatteringRows.add(bandSet.toCoefficients(List.of()));
+        scatteringRows.add(bandSet.toCoefficients(List.of()));
+        Map<String, Integer> materialIndices = new HashMap<>();
+
+        JsonObject sets = JsonParser.parseReader(new InputStreamReader(coefficientSets)).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> entry : sets.entrySet()) {
+            List<AbsorptionCoefficient> coefficients = new ArrayList<>();
+            List<AbsorptionCoefficient> scatteringCoefficients = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> freqEntry : entry.getValue().getAsJsonObject().entrySet()) {
+                if (freqEntry.getKey().equals(SCATTERING_KEY)) {
+                    scatteringCoefficients = parseCoefficients(freqEntry.getValue().getAsJsonObject());
+                    continue;
+                }
+                coefficients.add(new AbsorptionCoefficient(Integer.parseInt(freqEntry.getKey()), freqEntry.getValue().getAsDouble()));
+            }
+            materialIndices.put(entry.getKey(), names.size());
+            names.add(entry.getKey());
+            rows.add(bandSet.toAttenuation(coefficients));
+            scatteringRows.add(bandSet.toCoefficients(scatteringCoefficients));
+        }
+
+        Map<String, Integer> blockMaterials = new HashMap<>();
+        JsonArray blocks = JsonParser.parseReader(new InputStreamReader(itemMap)).getAsJsonArray();
+        for (JsonElement element : blocks) {
+            JsonObject item = element.getAsJsonObject();
+            Integer material = materialIndices.get(item.get("coefficients").getAsString());
+            if (material != null) {
+                blockMaterials.put(item.get("block").getAsString(), material);
+            }
+        }
+
+        int stride = bandSet.getStride();
+        double[] attenuation = new double[rows.size() * stride];
+        double[] scattering = new double[rows.size() * stride];
+        for (int m = 0; m < rows.size(); m++) {
+            System.arraycopy(rows.get(m), 0, attenuation, m * stride, stride);
+            System.arraycopy(scatteringRows.get(m), 0, scattering, m * stride, stride);
+        }
+        return new MaterialTable(bandSet, names, attenuation, scattering, materialIndices, blockMaterials);
+    }
+
+    /**
+     * Loads the material table from the {@code coefficient_sets.json} and {@code item_map.json}
+     * bundled with the mod.
+     *
+     * @param bandSet The frequency bands to resolve coefficients for.
+     * @return The loaded table.
+     * @throws RuntimeException if the resources are missing or cannot be read.
+     */
+    public static MaterialTable loadBundled(BandSet bandSet) {
+        try (InputStream coefficientSets = MaterialTable.class.getResourceAsStream("/coefficient_sets.json");
+             InputStream itemMap = MaterialTable.class.getResourceAsStream("/item_map.json")) {
+            if (coefficientSets == null || itemMap == null) {
+                throw new IOException("Missing coefficient_sets.json or item_map.json");
+            }
+            return load(coefficientSets, itemMap, bandSet);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to load material table", e);
+        }
+    }
+
+    private static List<AbsorptionCoefficient> parseCoefficients(JsonObject object) {
+        List<AbsorptionCoefficient> coefficients = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> freqEntry : object.entrySet()) {
+            coefficients.add(new AbsorptionCoefficient(Integer.parseInt(freqEntry.getKey()), freqEntry.getValue().getAsDouble()));
+        }
+        return coefficients;
+    }
+
+    /**
+     * Looks up a material by the name of its coefficient set.
+     *
+     * @param name The coefficient set name, e.g. {@code stone}.
+     * @return The material index, or -1 if there is no such material.
+     */
+    public int getMaterialIndex(String name) {
+        return materialIndices.getOrDefault(name, -1);
+    }
+
+    /**
+     * Looks up the material mapped to a block identifier in the block map.
+     *
+     * @param blockId The namespaced block identifier, e.g. {@code minecraft:stone}.
+     * @return The material index, or -1 if the block is not mapped.
+     */
+    public int getBlockMaterial(String blockId) {
+        return blockMaterials.getOrDefault(blockId, -1);
+    }
+
+    /**
+     * Returns the flat per-band energy factors of all materials.
+     *
+     * @return the backing array; callers must not modify it.
+     */
+    public double[] getAttenuation() {
+        return attenuation;
+    }
+
+    /**
+     * Returns the flat per-band scattering coefficients of all materials, in the same layout as
+     * {@link #getAttenuation()}.
+     *
+     * @return the backing array; callers must not modify it.
+     */
+    public double[] getScattering() {
+        return scattering;
+    }
+
+    public BandSet getBandSet() {
+        return bandSet;
+    }
+
+    public String getName(int material) {
+        return names.get(material);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public int getBlockCount() {
+        return blockMaterials.size();
+    }
+}
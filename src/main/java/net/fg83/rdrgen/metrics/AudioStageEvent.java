@@ -0,0 +1,51 @@
+package net.fg83.rdrgen.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one stage of turning an echogram into a waveform, such as
+ * smoothing a band, a filter pass, combining the bands or cleaning up the result.
+ *
+ * Stages begin the event themselves and hand their details to {@link #end(String, double, int)},
+ * which only fills in the fields when the event is actually recorded.
+ */
+@Name("net.fg83.rdrgen.AudioStage")
+@Label("Audio Stage")
+@Category({"Render Distance Reverb Generator", "DSP"})
+@Description("A stage of rendering an impulse response")
+@StackTrace(false)
+public class AudioStageEvent extends Event {
+    @Label("Stage")
+    public String stage;
+
+    @Label("Frequency")
+    @Description("Frequency a filter stage works at in Hz, or 0 for other stages")
+    @Frequency
+    public double frequency;
+
+    @Label("Samples")
+    public int samples;
+
+    /**
+     * Ends and commits the event, if it is recorded.
+     *
+     * @param stage     The name of the stage.
+     * @param frequency The frequency a filter stage works at in Hz, or 0 for other stages.
+     * @param samples   The number of samples processed.
+     */
+    public void end(String stage, double frequency, int samples) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage;
+            this.frequency = frequency;
+            this.samples = samples;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.fg83.rdrgen.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for summing the worker histograms of one receiver.
+ */
+@Name("net.fg83.rdrgen.EchogramMerge")
+@Label("Echogram Merge")
+@Category({"Render Distance Reverb Generator", "Trace"})
+@Description("The worker histograms of a receiver summed into one")
+@StackTrace(false)
+public class EchogramMergeEvent extends Event {
+    @Label("Receiver")
+    public int receiver;
+
+    @Label("Histograms")
+    @Description("Worker histograms merged")
+    public int histograms;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Arrivals")
+    public long arrivals;
+}
@@ -0,0 +1,219 @@
+package net.fg83.rdrgen.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.fg83.rdrgen.trace.RayBatch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and phase timings of one simulation run.
+ *
+ * Every counter is a {@link LongAdder}, which stripes its value over cells claimed per thread, so
+ * workers add to it without contending for a single cache line. Workers do not update the counters
+ * per ray either: a {@link RayBatch} tallies its rays in plain fields while tracing, and the totals
+ * of a chunk are added with {@link #addBatch(RayBatch)}.
+ *
+ * Phase timings are in nanoseconds. Phases run by the worker pool (populate, trace, accumulate) are
+ * summed over all workers, so they measure CPU time and may exceed the wall-clock time of the run;
+ * rays per second are computed from the wall-clock time spent tracing instead. The other phases
+ * run on a single thread.
+ *
+ * After a run, {@link #writeJson(Path, int)} dumps everything as a JSON object, so runs can be compared
+ * to catch regressions.
+ */
+public class RunMetrics {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    public enum Phase {
+        CAPTURE,
+        IMAGE_SOURCES,
+        POPULATE,
+        TRACE,
+        ACCUMULATE,
+        REDUCE,
+        SMOOTH,
+        FILTER,
+        CLEANUP,
+        WRITE
+    }
+
+    private final long startTime = System.nanoTime();
+
+    private final LongAdder rays = new LongAdder();
+    private final LongAdder arrivals = new LongAdder();
+    private final LongAdder bounces = new LongAdder();
+    private final LongAdder[] terminations = new LongAdder[RayBatch.TERMINATION_REASONS];
+    private final LongAdder[] bounceHistogram = new LongAdder[RayBatch.BOUNCE_HISTOGRAM_BUCKETS];
+    private final Map<Phase, LongAdder> phaseTimes = new EnumMap<>(Phase.class);
+    private final LongAdder tracingWallTime = new LongAdder();
+
+    private int gridReceivers;
+    private int[] receiverGridIndices;
+    private double[] receiverPositions;
+
+    public RunMetrics() {
+        for (int i = 0; i < terminations.length; i++) {
+            terminations[i] = new LongAdder();
+        }
+        for (int i = 0; i < bounceHistogram.length; i++) {
+            bounceHistogram[i] = new LongAdder();
+        }
+        for (Phase phase : Phase.values()) {
+            phaseTimes.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Adds the totals of a traced batch: its rays, arrivals, bounces, how its rays ended, and how
+     * many bounces they took.
+     *
+     * @param batch The traced batch.
+     */
+    public void addBatch(RayBatch batch) {
+        rays.add(batch.size());
+        arrivals.add(batch.getArrivalCount());
+        bounces.add(batch.getBounceCount());
+        for (int i = 0; i < terminations.length; i++) {
+            int count = batch.getTerminationCount(i);
+            if (count > 0) {
+                terminations[i].add(count);
+            }
+        }
+        for (int i = 0; i < bounceHistogram.length; i++) {
+            int count = batch.getBounceHistogramCount(i);
+            if (count > 0) {
+                bounceHistogram[i].add(count);
+            }
+        }
+    }
+
+    /**
+     * Records the receivers the run is heard at. Set once, before tracing starts.
+     *
+     * @param gridReceivers       The number of receivers of the configured grid.
+     * @param receiverGridIndices Per kept receiver, its index in the grid.
+     * @param receiverPositions   The positions of the kept receivers as consecutive x, y, z triples.
+     */
+    public void setReceivers(int gridReceivers, int[] receiverGridIndices, double[] receiverPositions) {
+        this.gridReceivers = gridReceivers;
+        this.receiverGridIndices = receiverGridIndices;
+        this.receiverPositions = receiverPositions;
+    }
+
+    /**
+     * Adds time spent in a phase.
+     *
+     * @param phase The phase.
+     * @param nanos The time in nanoseconds.
+     */
+    public void addPhaseTime(Phase phase, long nanos) {
+        phaseTimes.get(phase).add(nanos);
+    }
+
+    /**
+     * Adds wall-clock time during which the pool was tracing rays, the base of the ray rate.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    public void addTracingWallTime(long nanos) {
+        tracingWallTime.add(nanos);
+    }
+
+    public long getRayCount() {
+        return rays.sum();
+    }
+
+    public long getArrivalCount() {
+        return arrivals.sum();
+    }
+
+    public long getPhaseTime(Phase phase) {
+        return phaseTimes.get(phase).sum();
+    }
+
+    public double getRaysPerSecond() {
+        long nanos = tracingWallTime.sum();
+        return nanos > 0 ? rays.sum() / (nanos / 1e9) : 0;
+    }
+
+    /**
+     * Returns the metrics as a JSON object.
+     *
+     * @param jobId The ID of the simulation job the metrics belong to.
+     * @return the JSON object.
+     */
+    public JsonObject toJson(int jobId) {
+        long rayCount = rays.sum();
+        JsonObject json = new JsonObject();
+        json.addProperty("job", jobId);
+        json.addProperty("wall_seconds", (System.nanoTime() - startTime) / 1e9);
+        json.addProperty("rays", rayCount);
+        json.addProperty("rays_per_second", getRaysPerSecond());
+        json.addProperty("arrivals", arrivals.sum());
+        json.addProperty("arrivals_per_ray", rayCount > 0 ? (double) arrivals.sum() / rayCount : 0);
+        json.addProperty("bounces", bounces.sum());
+        json.addProperty("bounces_per_ray", rayCount > 0 ? (double) bounces.sum() / rayCount : 0);
+
+        if (receiverGridIndices != null) {
+            json.addProperty("grid_receivers", gridReceivers);
+            JsonArray receivers = new JsonArray();
+            for (int r = 0; r < receiverGridIndices.length; r++) {
+                JsonObject receiver = new JsonObject();
+                receiver.addProperty("grid_index", receiverGridIndices[r]);
+                receiver.addProperty("x", receiverPositions[3 * r]);
+                receiver.addProperty("y", receiverPositions[3 * r + 1]);
+                receiver.addProperty("z", receiverPositions[3 * r + 2]);
+                receivers.add(receiver);
+            }
+            json.add("receivers", receivers);
+        }
+
+        JsonObject histogram = new JsonObject();
+        for (int i = 0; i < bounceHistogram.length; i++) {
+            long count = bounceHistogram[i].sum();
+            if (count > 0) {
+                histogram.addProperty(RayBatch.getBounceHistogramLabel(i), count);
+            }
+        }
+        json.add("bounces_per_ray_histogram", histogram);
+
+        JsonObject ends = new JsonObject();
+        for (int i = 0; i < terminations.length; i++) {
+            ends.addProperty(RayBatch.getTerminationName(i), terminations[i].sum());
+        }
+        json.add("ray_terminations", ends);
+
+        JsonObject phases = new JsonObject();
+        for (Phase phase : Phase.values()) {
+            phases.addProperty(phase.name().toLowerCase(Locale.ROOT), phaseTimes.get(phase).sum() / 1e6);
+        }
+        json.add("phase_milliseconds", phases);
+        return json;
+    }
+
+    /**
+     * Writes the metrics as pretty-printed JSON. Failures are reported and otherwise ignored, as
+     * metrics must never break a run.
+     *
+     * @param path  The file to write.
+     * @param jobId The ID of the simulation job the metrics belong to.
+     */
+    public void writeJson(Path path, int jobId) {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            GSON.toJson(toJson(jobId), writer);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package net.fg83.rdrgen.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event spanning one simulation job, from the start of tracing to the last
+ * file written. The trace, merge, DSP and write events of the job nest inside it on the timeline.
+ */
+@Name("net.fg83.rdrgen.Simulation")
+@Label("Simulation")
+@Category({"Render Distance Reverb Generator", "Simulation"})
+@Description("One acoustic simulation job")
+@StackTrace(false)
+public class SimulationEvent extends Event {
+    @Label("Job")
+    public int job;
+
+    @Label("Rays")
+    @Description("Rays traced")
+    public long rays;
+
+    @Label("Arrivals")
+    public long arrivals;
+
+    @Label("Receivers")
+    public int receivers;
+
+    @Label("Cancelled")
+    public boolean cancelled;
+}
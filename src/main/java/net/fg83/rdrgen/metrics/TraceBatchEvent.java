@@ -0,0 +1,44 @@
+package net.fg83.rdrgen.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one chunk of rays a worker generated, traced and accumulated.
+ * There is one event per few thousand rays, so it is cheap enough to leave enabled.
+ */
+@Name("net.fg83.rdrgen.TraceBatch")
+@Label("Trace Batch")
+@Category({"Render Distance Reverb Generator", "Trace"})
+@Description("A chunk of rays generated, traced and accumulated by one worker")
+@StackTrace(false)
+public class TraceBatchEvent extends Event {
+    @Label("Job")
+    public int job;
+
+    @Label("Rays")
+    public int rays;
+
+    @Label("Bounces")
+    public long bounces;
+
+    @Label("Arrivals")
+    public int arrivals;
+
+    @Label("Populate Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long populateTime;
+
+    @Label("Trace Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long traceTime;
+
+    @Label("Accumulate Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long accumulateTime;
+}
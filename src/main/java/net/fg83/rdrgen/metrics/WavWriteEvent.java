@@ -0,0 +1,30 @@
+package net.fg83.rdrgen.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for writing an impulse response to a WAV file.
+ */
+@Name("net.fg83.rdrgen.WavWrite")
+@Label("WAV Write")
+@Category({"Render Distance Reverb Generator", "DSP"})
+@StackTrace(false)
+public class WavWriteEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Channels")
+    public int channels;
+
+    @Label("Frames")
+    public int frames;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -1,25 +1,32 @@
 package net.fg83.rdrgen.task;
 
-import net.fg83.rdrgen.Ray;
 import net.fg83.rdrgen.client.RDRGClient;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.metrics.RunMetrics;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.util.Formatting;
 
 /**
  * The BuildIRTask class is responsible for processing ray tracing results and generating an impulse response (IR)
- * for the RDRCompanionClient. It continuously monitors the state of a ray tracing operation and, upon completion,
- * aggregates the results to perform further processing.
+ * for the RDRCompanionClient. It runs once the rays of a {@link PopulateRaysTask} have all been traced, and
+ * aggregates the results of that simulation to perform further processing.
  *
- * This class implements the Runnable interface, allowing it to be executed in a separate thread to handle
- * asynchronous processing without blocking the main application flow.
+ * The task runs on the simulation engine's dispatcher thread as the last step of its job, so the next queued
+ * simulation only starts once every IR of this one was written. If the job is cancelled while IRs are being
+ * written, the remaining receivers are skipped.
+ *
+ * All IRs of a run share one base file name, and once they are written the run's {@link RunMetrics} are
+ * saved next to them as JSON.
  */
 public class BuildIRTask implements Runnable {
     MinecraftClient client;
     RDRGClient companionClient;
+    PopulateRaysTask job;
 
-    public BuildIRTask(MinecraftClient client, RDRGClient companionClient) {
+    public BuildIRTask(MinecraftClient client, RDRGClient companionClient, PopulateRaysTask job) {
         this.client = client;
         this.companionClient = companionClient;
+        this.job = job;
     }
 
     /**
@@ -27,36 +34,33 @@ public class BuildIRTask implements Runnable {
      */
     @Override
     public void run() {
-        while (!companionClient.rayPool.isTerminated()) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
         System.out.println("BuildIRTask has proceeded to run.");
-        double percentHit = (float) (Math.round(((float) companionClient.tracedRayQueue.size() / RDRGClient.processedRays) * 10000)) / 100;
-        System.out.println(RDRGClient.processedRays + " rays processed | " + companionClient.tracedRayQueue.size() + " rays hit target (" + percentHit + "%)");
-        if (!companionClient.isCastingRays.compareAndSet(true, false)) {
-            RDRGClient.sendPlayerMessage(client, "Error building waveform. Please try again.", new Formatting[]{Formatting.RED});
-            return;
-        }
+        Simulation simulation = job.getSimulation();
+        RunMetrics metrics = job.getMetrics();
+        long processedRays = metrics.getRayCount();
+        long raysHit = simulation.getHitCount();
+        // Every ray may arrive at several receivers and several times, so this is a rate, not a share
+        double arrivalsPerRay = processedRays > 0 ? (double) Math.round((double) raysHit / processedRays * 100) / 100 : 0;
+        System.out.println(processedRays + " rays processed | " + raysHit + " arrivals at " + simulation.getReceiverCount() + " receivers (" + arrivalsPerRay + " per ray)");
+        System.out.println(Math.round(metrics.getRaysPerSecond()) + " rays/s");
 
-        if (companionClient.isGeneratingIR.compareAndSet(false, true)) {
-            assert client.player != null;
+        assert client.player != null;
 
-            while (!companionClient.tracedRayQueue.isEmpty()) {
-                Ray ray = companionClient.tracedRayQueue.poll();
-                if (ray == null) {
-                    continue;
-                }
-                if (ray.didHitTarget()) {
-                    companionClient.addEnergyToIR(ray.getDelayTime(), ray.getEnergy());
-                }
+        String outputName = job.getOutputName();
+        int receivers = simulation.getReceiverCount();
+        for (int r = 0; r < receivers && !job.isCancelled(); r++) {
+            Echogram echogram = simulation.buildEchogram(r);
+            String label = simulation.getReceiverLabel(r);
+            if (label != null && echogram.isEmpty()) {
+                // A grid receiver in a sealed space hears nothing; the rest of the grid still gets its IR
+                RDRGClient.sendPlayerMessage(client, "Receiver " + label + " heard nothing, skipping.", new Formatting[]{Formatting.GRAY});
             }
-
-            companionClient.generateIR(client);
-            companionClient.isGeneratingIR.set(false);
+            else {
+                companionClient.generateIR(client, echogram, outputName, label, job.getListenerYaw(), metrics);
+            }
+        }
+        if (!job.isCancelled()) {
+            metrics.writeJson(RDRGClient.getOutputPath(outputName + "_metrics.json"), job.getId());
         }
     }
 }
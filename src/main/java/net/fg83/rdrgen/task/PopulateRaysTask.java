@@ -1,29 +1,96 @@
 package net.fg83.rdrgen.task;
 
-import net.fg83.rdrgen.Ray;
-import net.fg83.rdrgen.VectorUtils;
+import net.fg83.rdrgen.RDRGConfig;
 import net.fg83.rdrgen.client.RDRGClient;
+import net.fg83.rdrgen.material.BlockStateMaterials;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.metrics.SimulationEvent;
+import net.fg83.rdrgen.volume.AcousticVolume;
+import net.fg83.rdrgen.volume.CaptureFile;
+import net.fg83.rdrgen.volume.VolumeCapture;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.entity.Entity;
 import net.minecraft.util.Formatting;
-import net.minecraft.util.math.Vec3d;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * A task responsible for populating acoustic simulation rays between a transmitter and a receiver
- * in a Minecraft environment. This task submits rays to an execution pool and manages their computation.
- * The task is designed to be executed in a multithreaded context.
+ * A simulation job responsible for populating acoustic simulation rays between a transmitter and a
+ * receiver in a Minecraft environment. The job is run by the {@link SimulationEngine}, submits rays
+ * to the engine's pool and manages their computation, then builds the IR with a {@link BuildIRTask}.
+ *
+ * Rays are traced against an {@link AcousticVolume}, so workers never touch the live world. The
+ * surrounding sections, the positions and the output name are read on the client thread before
+ * this task is submitted, and the job resolves the copied sections into materials on the engine
+ * thread before tracing. The tracing itself is done by a {@link Simulation}, the same one the
+ * headless runner uses, and this task waits for it to finish. With
+ * {@link RDRGConfig#saveCaptures} set, the volume and positions are also saved as a
+ * {@link CaptureFile} next to the IRs, so the scene can be rendered again without the game.
+ *
+ * The accumulated energy belongs to the job. A cancelled job stops tracing within a chunk per
+ * worker, skips the IR build, and its histograms are released along with the captured volume.
+ *
+ * Rays start at the source and are heard by a grid of receivers around the listener,
+ * see {@link RDRGConfig#createReceiverGrid}. With the default grid size of one, that is just the
+ * receiver itself; larger grids pay for tracing once and yield one echogram per receiver.
+ *
+ * Every job keeps the {@link RunMetrics} of its run: ray counts, how rays ended and how long each
+ * phase took, from the volume capture to writing the files. They double as the progress counter.
+ * The whole run is also recorded as a {@link SimulationEvent} for Java Flight Recorder.
  */
-public class PopulateRaysTask implements Runnable{
+public class PopulateRaysTask extends SimulationJob {
 
     MinecraftClient client;
     RDRGClient companionClient;
 
-    Entity transmitter;
-    Entity receiver;
+    VolumeCapture capture;
+    BlockStateMaterials materials;
+    AcousticVolume volume;
+
+    private final double sourceX;
+    private final double sourceY;
+    private final double sourceZ;
+    private final double listenerX;
+    private final double listenerY;
+    private final double listenerZ;
+    private final float listenerYaw;
+    private final String outputName;
 
-    public PopulateRaysTask(Entity transmitter, Entity receiver, MinecraftClient client, RDRGClient companionClient) {
-        this.transmitter = transmitter;
-        this.receiver = receiver;
+    private final AtomicBoolean isCastingRays = new AtomicBoolean(false);
+    private Simulation simulation;
+    private final RunMetrics metrics = new RunMetrics();
+
+    /**
+     * Everything the job needs from the game is read on the client thread, in the same tick the
+     * volume is captured, so the job never touches live game objects.
+     *
+     * @param capture         The sections copied around the listener.
+     * @param materials       The block state to material table to resolve the copy with.
+     * @param sourceX         Source x position, where rays start.
+     * @param sourceY         Source y position.
+     * @param sourceZ         Source z position.
+     * @param listenerX       Listener x position, the centre of the receiver grid.
+     * @param listenerY       Listener y position.
+     * @param listenerZ       Listener z position.
+     * @param listenerYaw     The yaw the listener faced, which orients Ambisonic IRs.
+     * @param outputName      The base file name shared by every file of the run.
+     * @param client          The client to report to.
+     * @param companionClient The mod client that writes the IRs.
+     */
+    public PopulateRaysTask(VolumeCapture capture, BlockStateMaterials materials, double sourceX, double sourceY, double sourceZ, double listenerX, double listenerY, double listenerZ, float listenerYaw, String outputName, MinecraftClient client, RDRGClient companionClient) {
+        this.capture = capture;
+        this.materials = materials;
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        this.sourceZ = sourceZ;
+        this.listenerX = listenerX;
+        this.listenerY = listenerY;
+        this.listenerZ = listenerZ;
+        this.listenerYaw = listenerYaw;
+        this.outputName = outputName;
         this.client = client;
         this.companionClient = companionClient;
     }
@@ -31,43 +98,132 @@ public class PopulateRaysTask implements Runnable{
      * Runs this operation.
      */
     @Override
-    public void run() {
+    protected void run(ForkJoinPool pool) {
+        SimulationEvent event = new SimulationEvent();
+        event.begin();
+        try {
+            simulate(pool);
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.job = getId();
+                event.rays = metrics.getRayCount();
+                event.arrivals = metrics.getArrivalCount();
+                event.receivers = simulation != null ? simulation.getReceiverCount() : 0;
+                event.cancelled = isCancelled();
+                event.commit();
+            }
+        }
+    }
+
+    private void simulate(ForkJoinPool pool) {
         assert client.player != null;
 
-        if (receiver == null || transmitter == null) {
+        if (capture == null) {
             return;
         }
+        RDRGClient.resetProgress();
 
-        Vec3d startPos = receiver.getEyePos();
+        long start = System.nanoTime();
+        volume = capture.resolve(materials);
+        capture = null;
+        metrics.addPhaseTime(RunMetrics.Phase.CAPTURE, System.nanoTime() - start);
 
-        Thread progressReportThread = new Thread(new ProgressReportTask(client, companionClient));
-        progressReportThread.start();
+        simulation = new Simulation(this, RDRGClient.config, RDRGClient.materialTable, volume,
+                sourceX, sourceY, sourceZ,
+                listenerX, listenerY, listenerZ,
+                metrics);
+        if (RDRGClient.config.saveCaptures) {
+            saveCapture(new CaptureFile(volume, sourceX, sourceY, sourceZ, listenerX, listenerY, listenerZ, listenerYaw));
+        }
 
+        RDRGClient.sendPlayerMessage(client, "Running acoustic simulation #" + getId() + "...", new Formatting[]{Formatting.GOLD, Formatting.BOLD});
+        RDRGClient.sendPlayerMessage(client, "(Grab some coffee, this is going to take a while. Press the key again to cancel.)", new Formatting[]{Formatting.GRAY, Formatting.ITALIC});
+        if (simulation.getDroppedReceiverCount() > 0) {
+            RDRGClient.sendPlayerMessage(client, simulation.getDroppedReceiverCount() + " receivers of the grid are inside blocks and were dropped.", new Formatting[]{Formatting.GRAY});
+        }
+
+        // The flag is set before the reporter starts and the reporter is interrupted however tracing
+        // ends, so it never waits for a run that already finished
+        Thread progressReportThread = new Thread(new ProgressReportTask(client, this), "RDRG progress");
+        progressReportThread.setDaemon(true);
+        isCastingRays.set(true);
+        progressReportThread.start();
         try {
-            RDRGClient.sendPlayerMessage(client, "Running acoustic simulation...", new Formatting[]{Formatting.GOLD, Formatting.BOLD});
-            RDRGClient.sendPlayerMessage(client, "(Grab some coffee, this is going to take a while.)", new Formatting[]{Formatting.GRAY, Formatting.ITALIC});
-
-            for (float pitch = -90.0F; pitch <= 90.0F; pitch += 0.1F) {
-                int numYawRays = (int) Math.round(VectorUtils.getScaledRaysForPitch(90 - Math.abs(pitch)));
-
-                for (int yawRays = 0; yawRays < numYawRays; yawRays++) {
-                    float yaw = ((((float) yawRays * 360.0F) / (float) numYawRays) / 10) - 180.0F;
-                    Vec3d currentDir = receiver.getRotationVector(pitch, yaw);
-                    RDRGClient.raysSubmitted++;
-                    companionClient.rayPool.submit(new CastRayTask(new Ray(startPos, currentDir, receiver, transmitter), client, companionClient));
-                }
-                try {
-                    Thread.sleep(30);
-                }
-                catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            System.out.println("Finished populating rays.");
+            simulation.trace(pool, companionClient.engine.getRayBatches());
         } finally {
-            // Shut down the pool to release resources
-            companionClient.rayPool.shutdown();
-            new BuildIRTask(client, companionClient).run();
+            isCastingRays.set(false);
+            progressReportThread.interrupt();
+        }
+
+        if (isCancelled()) {
+            System.out.println("Simulation " + getId() + " cancelled.");
+            RDRGClient.sendPlayerMessage(client, "Simulation #" + getId() + " cancelled.", new Formatting[]{Formatting.GRAY});
+            return;
         }
+        RDRGClient.reportProgress(client, metrics.getRayCount(), simulation.getPlannedRayCount());
+        System.out.println("Finished tracing rays.");
+        new BuildIRTask(client, companionClient, this).run();
+    }
+
+    /**
+     * Saves the scene of this job next to its IRs. A capture that cannot be written is reported
+     * and does not stop the simulation.
+     *
+     * @param capture The captured volume and positions.
+     */
+    private void saveCapture(CaptureFile capture) {
+        try {
+            Path path = RDRGClient.getOutputPath(outputName + CaptureFile.EXTENSION);
+            Files.createDirectories(path.getParent());
+            capture.write(path, RDRGClient.materialTable);
+            System.out.println("Saved capture " + outputName + CaptureFile.EXTENSION);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void release() {
+        if (simulation != null) {
+            simulation.release();
+        }
+        capture = null;
+        volume = null;
+    }
+
+    public boolean isCastingRays() {
+        return isCastingRays.get();
+    }
+
+    /**
+     * Returns the metrics of this job's run. Copying the sections is timed by whoever copies them,
+     * before the job is submitted, and adds to the time this job spends resolving the copy.
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the simulation of this job, or {@code null} before the job started.
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns the base file name shared by every file of this job's run.
+     */
+    public String getOutputName() {
+        return outputName;
+    }
+
+    /**
+     * Returns the yaw the listener faced when the simulation was started, which orients Ambisonic IRs.
+     */
+    public float getListenerYaw() {
+        return listenerYaw;
     }
 }
@@ -5,16 +5,12 @@ import net.minecraft.client.MinecraftClient;
 
 /**
  * ProgressReportTask is responsible for periodically reporting the progress
- * of ray casting operations from the companion client to the Minecraft client.
+ * of ray casting operations of a simulation job to the Minecraft client.
  *
- * This task runs in a separate thread and monitors the state of the companion client
- * to determine when to begin and stop reporting progress. It relies on the
- * `isCastingRays` flag in the companion client to control the reporting process.
- *
- * If the `isCastingRays` flag is set to false, the task waits until it is set to
- * true. Once the flag is true, the task continuously sends progress updates until
- * the flag is set back to false, at which point it sends one final progress report
- * and terminates.
+ * This task runs in a separate daemon thread that the job starts once its
+ * `isCastingRays` flag is set. It sends progress updates until the flag is
+ * cleared or the thread is interrupted, which the job does however tracing
+ * ends. The job sends the final progress report itself.
  *
  * Thread sleeping is used to introduce a delay between progress updates to prevent
  * excessive reporting.
@@ -22,11 +18,11 @@ import net.minecraft.client.MinecraftClient;
 public class ProgressReportTask implements Runnable{
 
     MinecraftClient client;
-    RDRGClient companionClient;
+    PopulateRaysTask job;
 
-    public ProgressReportTask(MinecraftClient client, RDRGClient companionClient) {
+    public ProgressReportTask(MinecraftClient client, PopulateRaysTask job) {
         this.client = client;
-        this.companionClient = companionClient;
+        this.job = job;
     }
 
     /**
@@ -34,21 +30,13 @@ public class ProgressReportTask implements Runnable{
      */
     @Override
     public void run() {
-        while (!companionClient.isCastingRays.get()){
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        while (companionClient.isCastingRays.get()){
-            RDRGClient.reportProgress(client);
+        while (job.isCastingRays()){
+            RDRGClient.reportProgress(client, job.getMetrics().getRayCount(), job.getSimulation().getPlannedRayCount());
             try {
                 Thread.sleep(100);
             } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                return;
             }
         }
-        RDRGClient.reportProgress(client);
     }
 }
@@ -0,0 +1,141 @@
+package net.fg83.rdrgen.task;
+
+import be.tarsos.dsp.AudioEvent;
+import net.fg83.rdrgen.RDRGConfig;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.ir.IRRenderer;
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.volume.CaptureFile;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A simulation job that renders the IRs of a saved {@link CaptureFile} without a running game.
+ *
+ * It traces the capture with the same {@link Simulation} a {@link PopulateRaysTask} uses, then
+ * renders and writes one IR per receiver and the run's {@link RunMetrics} into an output directory.
+ * Progress goes to the console. Whoever submitted the job can wait for it with {@link #await()}.
+ */
+public class RenderCaptureTask extends SimulationJob {
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+
+    private final SimulationEngine engine;
+    private CaptureFile capture;
+    private final RDRGConfig config;
+    private final MaterialTable materials;
+    private final Path outputDirectory;
+    private final String outputName;
+    private final RunMetrics metrics = new RunMetrics();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private Simulation simulation;
+    private volatile boolean tracing;
+    private volatile int filesWritten;
+
+    /**
+     * @param engine          The engine the job is submitted to, whose workers' ray batches it uses.
+     * @param capture         The scene to render.
+     * @param config          The simulation settings.
+     * @param materials       The material table to simulate with, resolved against the capture.
+     * @param outputDirectory The existing directory to write the files to.
+     * @param outputName      The base file name shared by the files of the run.
+     */
+    public RenderCaptureTask(SimulationEngine engine, CaptureFile capture, RDRGConfig config, MaterialTable materials, Path outputDirectory, String outputName) {
+        this.engine = engine;
+        this.capture = capture;
+        this.config = config;
+        this.materials = materials;
+        this.outputDirectory = outputDirectory;
+        this.outputName = outputName;
+    }
+
+    @Override
+    protected void run(ForkJoinPool pool) {
+        simulation = new Simulation(this, config, materials, capture.getVolume(),
+                capture.getSourceX(), capture.getSourceY(), capture.getSourceZ(),
+                capture.getReceiverX(), capture.getReceiverY(), capture.getReceiverZ(),
+                metrics);
+
+        Thread progressThread = new Thread(this::reportProgress, "RDRG progress");
+        progressThread.setDaemon(true);
+        tracing = true;
+        progressThread.start();
+        try {
+            simulation.trace(pool, engine.getRayBatches());
+        }
+        finally {
+            tracing = false;
+            progressThread.interrupt();
+        }
+        if (isCancelled()) {
+            System.out.println("Simulation " + getId() + " cancelled.");
+            return;
+        }
+        System.out.println(metrics.getRayCount() + " rays processed | " + simulation.getHitCount() + " arrivals at " + simulation.getReceiverCount() + " receivers");
+        System.out.println(Math.round(metrics.getRaysPerSecond()) + " rays/s");
+
+        int receivers = simulation.getReceiverCount();
+        for (int r = 0; r < receivers && !isCancelled(); r++) {
+            Echogram echogram = simulation.buildEchogram(r);
+            String label = simulation.getReceiverLabel(r);
+            if (echogram.isEmpty()) {
+                System.out.println("Receiver " + (label != null ? label : r + 1) + " heard nothing, skipping.");
+                continue;
+            }
+            AudioEvent[] channels = IRRenderer.renderChannels(echogram, materials.getBandSet(), capture.getReceiverYaw(), metrics);
+            String filename = IRRenderer.getFileName(outputName, label, channels.length);
+            IRRenderer.writeWav(outputDirectory.resolve(filename), channels, metrics);
+            filesWritten++;
+            System.out.println("Wrote file '" + filename + "'");
+        }
+        if (!isCancelled()) {
+            metrics.writeJson(outputDirectory.resolve(outputName + "_metrics.json"), getId());
+        }
+    }
+
+    @Override
+    protected void release() {
+        if (simulation != null) {
+            simulation.release();
+        }
+        capture = null;
+        done.countDown();
+    }
+
+    /**
+     * Waits until the job finished, failed or was cancelled.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Returns the number of IR files written, 0 if the job failed or nothing was heard.
+     */
+    public int getFilesWritten() {
+        return filesWritten;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void reportProgress() {
+        while (tracing) {
+            try {
+                Thread.sleep(PROGRESS_INTERVAL_MILLIS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            long planned = simulation.getPlannedRayCount();
+            long traced = metrics.getRayCount();
+            System.out.println("Traced " + traced + " of " + planned + " rays (" + (planned > 0 ? traced * 100 / planned : 0) + "%)");
+        }
+    }
+}
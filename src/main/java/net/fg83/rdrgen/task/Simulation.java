@@ -0,0 +1,305 @@
+package net.fg83.rdrgen.task;
+
+import net.fg83.rdrgen.AudioUtils;
+import net.fg83.rdrgen.Medium;
+import net.fg83.rdrgen.RDRGConfig;
+import net.fg83.rdrgen.ir.ConvergenceMonitor;
+import net.fg83.rdrgen.ir.Echogram;
+import net.fg83.rdrgen.ir.EnergyAccumulator;
+import net.fg83.rdrgen.ir.EnergyHistogram;
+import net.fg83.rdrgen.ir.ImageSourceSolver;
+import net.fg83.rdrgen.material.MaterialTable;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.trace.FibonacciDirections;
+import net.fg83.rdrgen.trace.RayBatch;
+import net.fg83.rdrgen.trace.TraceContext;
+import net.fg83.rdrgen.volume.AcousticVolume;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The acoustic simulation of one scene, from a captured volume and the source and receiver
+ * positions to one echogram per receiver.
+ *
+ * A simulation only depends on the volume, the material table and the config, never on the game,
+ * so the client's {@link PopulateRaysTask} and the headless runner drive the very same tracer.
+ * {@link #trace(ForkJoinPool, ThreadLocal)} first computes the early reflections near the source
+ * exactly by the image-source stage, then traces rays in the pool until the ray budget is spent.
+ * Afterwards {@link #buildEchogram(int)} merges both for each receiver.
+ *
+ * Rays start at the source and are heard by a grid of receivers around the receiver position, see
+ * {@link RDRGConfig#createReceiverGrid}. Grid points inside blocks would never hear anything, so
+ * they are dropped before tracing. The simulation belongs to a {@link SimulationJob}, which
+ * it checks for cancellation between chunks of rays.
+ */
+public class Simulation {
+    private final SimulationJob job;
+    private final RDRGConfig config;
+    private final BandSet bandSet;
+    private final TraceContext context;
+    private final RunMetrics metrics;
+
+    private EnergyAccumulator energyAccumulator;
+    private EnergyHistogram[] earlyReflections;
+    private ForkJoinPool pool;
+    private volatile long plannedRays;
+    private final int droppedReceivers;
+
+    /**
+     * @param job       The job the simulation runs for, checked for cancellation.
+     * @param config    The simulation settings.
+     * @param materials The material table the volume's material indices refer to.
+     * @param volume    The captured volume to trace against.
+     * @param sourceX   Source x position, where rays start.
+     * @param sourceY   Source y position.
+     * @param sourceZ   Source z position.
+     * @param receiverX Receiver x position, the centre of the receiver grid.
+     * @param receiverY Receiver y position.
+     * @param receiverZ Receiver z position.
+     * @param metrics   The metrics of the run to record the simulation in.
+     */
+    public Simulation(SimulationJob job, RDRGConfig config, MaterialTable materials, AcousticVolume volume, double sourceX, double sourceY, double sourceZ, double receiverX, double receiverY, double receiverZ, RunMetrics metrics) {
+        this.job = job;
+        this.config = config;
+        this.bandSet = materials.getBandSet();
+        this.metrics = metrics;
+        double[] grid = config.createReceiverGrid(receiverX, receiverY, receiverZ);
+        int[] gridIndices = keepOpenReceivers(grid, volume, config.receiverGridSize);
+        double[] positions = new double[gridIndices.length * 3];
+        for (int r = 0; r < gridIndices.length; r++) {
+            System.arraycopy(grid, 3 * gridIndices[r], positions, 3 * r, 3);
+        }
+        metrics.setReceivers(config.getReceiverCount(), gridIndices, positions);
+        this.context = new TraceContext(
+                volume,
+                sourceX, sourceY, sourceZ,
+                positions,
+                gridIndices,
+                config.receiverRadius,
+                config.getReceiverCount() == 1,
+                materials.getAttenuation(),
+                materials.getScattering(),
+                bandSet.toLogAttenuation(Medium.AIR),
+                RayBatch.DEFAULT_MAX_DISTANCE,
+                config.imageSourceOrder,
+                config.imageSourceRadius,
+                config.maxIRLengthSeconds * AudioUtils.SAMPLE_RATE,
+                config.rouletteThreshold
+        );
+        this.droppedReceivers = config.getReceiverCount() - context.getReceiverCount();
+        if (droppedReceivers > 0) {
+            System.out.println("Dropped " + droppedReceivers + " of " + config.getReceiverCount() + " receivers inside blocks.");
+        }
+        this.plannedRays = config.rayCount;
+        this.energyAccumulator = new EnergyAccumulator(bandSet.getCount(), context.getReceiverCount(), config.ambisonicOutput);
+    }
+
+    /**
+     * Computes the early reflections and traces every ray of the simulation.
+     *
+     * @param pool    The worker pool to run in.
+     * @param batches The reused ray batch of every worker thread, holding at least {@link TraceRaysAction#CHUNK_SIZE} rays.
+     */
+    public void trace(ForkJoinPool pool, ThreadLocal<RayBatch> batches) {
+        this.pool = pool;
+        long start = System.nanoTime();
+        computeEarlyReflections(pool);
+        metrics.addPhaseTime(RunMetrics.Phase.IMAGE_SOURCES, System.nanoTime() - start);
+        traceRays(pool, batches);
+    }
+
+    /**
+     * Merges the traced rays and the early reflections at a receiver into its echogram. Must only
+     * be called once tracing finished. The histograms are summed in the pool that traced them.
+     *
+     * @param receiver The receiver index.
+     * @return the echogram.
+     */
+    public Echogram buildEchogram(int receiver) {
+        long start = System.nanoTime();
+        EnergyAccumulator accumulator = energyAccumulator;
+        Echogram echogram = Echogram.fromHistograms(
+                pool.submit(() -> accumulator.reduce(receiver)).join(),
+                metrics.getRayCount(),
+                earlyReflections != null ? earlyReflections[receiver] : null
+        );
+        metrics.addPhaseTime(RunMetrics.Phase.REDUCE, System.nanoTime() - start);
+        return echogram;
+    }
+
+    /**
+     * Frees the accumulated energy. The simulation must not be used afterwards.
+     */
+    public void release() {
+        if (energyAccumulator != null) {
+            energyAccumulator.release();
+        }
+        energyAccumulator = null;
+        earlyReflections = null;
+    }
+
+    public int getReceiverCount() {
+        return context.getReceiverCount();
+    }
+
+    public BandSet getBandSet() {
+        return bandSet;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of receivers of the grid that were dropped because they lie inside blocks.
+     */
+    public int getDroppedReceiverCount() {
+        return droppedReceivers;
+    }
+
+    /**
+     * Returns the number of arrivals added at all receivers so far.
+     */
+    public long getHitCount() {
+        return energyAccumulator.getHitCount();
+    }
+
+    /**
+     * Returns the number of rays the simulation means to trace, the total of its progress. It
+     * drops to the rays actually traced when an adaptive simulation converges early.
+     */
+    public long getPlannedRayCount() {
+        return plannedRays;
+    }
+
+    /**
+     * Returns the file label of a receiver, built from its index in the configured grid so the
+     * files of a grid position keep their name when other receivers are dropped.
+     *
+     * @param receiver The receiver index.
+     * @return the label, or {@code null} if the grid is a single receiver.
+     */
+    public String getReceiverLabel(int receiver) {
+        return config.getReceiverCount() == 1 ? null : "R" + (context.getReceiverGridIndex(receiver) + 1);
+    }
+
+    /**
+     * Selects the receivers of the grid whose voxel is empty. If every receiver lies inside a
+     * block, the grid point nearest the centre is kept, so the run still yields an IR.
+     *
+     * @param grid     The receiver positions of the whole grid as consecutive x, y, z triples.
+     * @param volume   The captured volume.
+     * @param gridSize The number of receivers along each side of the grid.
+     * @return the grid indices of the kept receivers, in grid order.
+     */
+    private static int[] keepOpenReceivers(double[] grid, AcousticVolume volume, int gridSize) {
+        int[] kept = new int[grid.length / 3];
+        int count = 0;
+        for (int r = 0; r < kept.length; r++) {
+            if (volume.getMaterial((int) Math.floor(grid[3 * r]), (int) Math.floor(grid[3 * r + 1]), (int) Math.floor(grid[3 * r + 2])) == AcousticVolume.EMPTY) {
+                kept[count++] = r;
+            }
+        }
+        if (count == 0) {
+            int size = Math.max(gridSize, 1);
+            return new int[]{(size / 2) * size + size / 2};
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * Computes the early specular reflections at every receiver with an {@link ImageSourceSolver}
+     * inside the pool, and stores them for the echograms.
+     *
+     * @param pool The worker pool to run in.
+     */
+    private void computeEarlyReflections(ForkJoinPool pool) {
+        int order = context.getImageSourceOrder();
+        if (order <= 0) {
+            return;
+        }
+        ImageSourceSolver solver = new ImageSourceSolver(context, bandSet, order, context.getImageSourceRadius(), energyAccumulator.isDirectional());
+        earlyReflections = pool.submit(solver::solve).join();
+        System.out.println("Computed image sources up to order " + order + " over " + solver.getPlaneCount() + " planes.");
+    }
+
+    /**
+     * Traces rays from the source until the ray budget is spent.
+     *
+     * Without an adaptive budget, the configured ray count is traced in one pass. Otherwise rays are
+     * traced in rounds of randomly rotated, uniformly spread directions. After each round the
+     * decay curves of the accumulated energy at every receiver are compared with those of the round
+     * before, and tracing stops once the {@link ConvergenceMonitor}s of all receivers report them
+     * converged or the configured ray count is reached. Cancelling the job stops tracing at the
+     * next chunk.
+     *
+     * @param pool    The worker pool to run in.
+     * @param batches The reused ray batch of every worker thread.
+     */
+    private void traceRays(ForkJoinPool pool, ThreadLocal<RayBatch> batches) {
+        EnergyAccumulator accumulator = energyAccumulator;
+        if (!config.adaptiveRayBudget) {
+            FibonacciDirections directions = new FibonacciDirections(config.rayCount);
+            traceRound(pool, new TraceRaysAction(directions, context, accumulator, batches, job, metrics));
+            return;
+        }
+
+        ConvergenceMonitor[] monitors = new ConvergenceMonitor[accumulator.getReceiverCount()];
+        for (int r = 0; r < monitors.length; r++) {
+            monitors[r] = new ConvergenceMonitor(config.convergenceToleranceDb);
+        }
+        Random random = new Random();
+        int round = 0;
+        long traced = 0;
+        while (traced < config.rayCount && !job.isCancelled()) {
+            int roundRays = (int) Math.min(Math.max(config.raysPerRound, 1), config.rayCount - traced);
+            FibonacciDirections directions = FibonacciDirections.randomlyRotated(roundRays, random);
+            traceRound(pool, new TraceRaysAction(directions, context, accumulator, batches, job, metrics));
+            if (job.isCancelled()) {
+                break;
+            }
+            traced += roundRays;
+            round++;
+
+            long start = System.nanoTime();
+            double change = pool.submit(() -> updateMonitors(accumulator, monitors)).join();
+            boolean converged = true;
+            for (ConvergenceMonitor monitor : monitors) {
+                converged &= monitor.isConverged();
+            }
+            metrics.addPhaseTime(RunMetrics.Phase.REDUCE, System.nanoTime() - start);
+            System.out.println("Round " + round + ": " + traced + " rays, decay curves changed by " + change + " dB");
+            if (converged) {
+                System.out.println("Converged after " + traced + " rays.");
+                break;
+            }
+        }
+        // Let the progress reach its end when the simulation converges early
+        plannedRays = traced;
+    }
+
+    /**
+     * Updates the convergence monitor of every receiver with its histogram so far. Runs inside the
+     * pool, so the histograms are summed by its workers.
+     *
+     * @param accumulator The accumulated energy of the simulation.
+     * @param monitors    The monitor of every receiver.
+     * @return The largest change of a decay curve since the last update, in dB.
+     */
+    private static double updateMonitors(EnergyAccumulator accumulator, ConvergenceMonitor[] monitors) {
+        double change = 0;
+        for (int r = 0; r < monitors.length; r++) {
+            change = Math.max(change, monitors[r].update(accumulator.reduce(r)));
+        }
+        return change;
+    }
+
+    private void traceRound(ForkJoinPool pool, TraceRaysAction action) {
+        long start = System.nanoTime();
+        pool.invoke(action);
+        metrics.addTracingWallTime(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,194 @@
+package net.fg83.rdrgen.task;
+
+import net.fg83.rdrgen.trace.BandSet;
+import net.fg83.rdrgen.trace.RayBatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived engine that runs simulation jobs on one persistent worker pool.
+ *
+ * Jobs are queued with {@link #submit(SimulationJob)} and run one at a time, in order, by a single
+ * dispatcher thread, so simulations never compete for the pool or for the shared progress
+ * counters. The pool and the ray batches of its workers are created once and reused by every job,
+ * so repeated runs do not pay for spinning up threads or growing batches again.
+ *
+ * Any job, queued or running, can be cancelled by its ID. A cancelled job stops at its next check,
+ * and its memory is released as soon as it returns. A queued job that is cancelled, or dropped by
+ * {@link #shutdown()}, is released right away.
+ *
+ * The queue and the running job are guarded by the engine's lock, and the dispatcher takes the
+ * next job and makes it the running one in a single step, so a job is always either queued or
+ * running while it is pending and can never be missed by a cancellation.
+ */
+public class SimulationEngine {
+    private final ForkJoinPool pool = new ForkJoinPool();
+    private final ArrayDeque<SimulationJob> queue = new ArrayDeque<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final ThreadLocal<RayBatch> rayBatches;
+    private final Thread dispatcher;
+    private SimulationJob currentJob;
+
+    /**
+     * Starts the engine's pool and dispatcher thread.
+     *
+     * @param bandSet The frequency bands every job traces, which size the workers' ray batches.
+     */
+    public SimulationEngine(BandSet bandSet) {
+        this.rayBatches = ThreadLocal.withInitial(() -> new RayBatch(TraceRaysAction.CHUNK_SIZE, bandSet));
+        this.dispatcher = new Thread(this::dispatch, "RDRG simulation engine");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a job to run after every job submitted before it.
+     *
+     * @param job The job to run.
+     * @return The ID of the job.
+     */
+    public synchronized int submit(SimulationJob job) {
+        job.setId(nextId.getAndIncrement());
+        queue.add(job);
+        notifyAll();
+        return job.getId();
+    }
+
+    /**
+     * Cancels a queued or running job.
+     *
+     * @param id The ID of the job.
+     * @return true if the job was found, false if it already finished or never existed.
+     */
+    public boolean cancel(int id) {
+        SimulationJob removed = null;
+        synchronized (this) {
+            if (currentJob != null && currentJob.getId() == id) {
+                currentJob.cancel();
+                return true;
+            }
+            for (SimulationJob job : queue) {
+                if (job.getId() == id) {
+                    queue.remove(job);
+                    removed = job;
+                    break;
+                }
+            }
+        }
+        if (removed == null) {
+            return false;
+        }
+        removed.cancel();
+        removed.release();
+        return true;
+    }
+
+    /**
+     * Cancels the running job, if there is one.
+     *
+     * @return the ID of the cancelled job, or -1 if no job was running.
+     */
+    public synchronized int cancelCurrent() {
+        if (currentJob == null) {
+            return -1;
+        }
+        currentJob.cancel();
+        return currentJob.getId();
+    }
+
+    /**
+     * Cancels the running job and drops and releases every queued one, so nothing that was
+     * pending runs afterwards.
+     *
+     * @return the number of jobs cancelled, 0 if the engine was idle.
+     */
+    public int cancelAll() {
+        List<SimulationJob> dropped;
+        int cancelled = 0;
+        synchronized (this) {
+            if (currentJob != null) {
+                currentJob.cancel();
+                cancelled++;
+            }
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+        }
+        releaseCancelled(dropped);
+        return cancelled + dropped.size();
+    }
+
+    /**
+     * Returns whether a job is running or waiting to run.
+     */
+    public synchronized boolean isBusy() {
+        return currentJob != null || !queue.isEmpty();
+    }
+
+    public synchronized int getQueuedJobCount() {
+        return queue.size();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the ray batches of the pool's workers, one per thread, reused by every job.
+     */
+    ThreadLocal<RayBatch> getRayBatches() {
+        return rayBatches;
+    }
+
+    /**
+     * Cancels every job and stops the dispatcher and the pool.
+     */
+    public void shutdown() {
+        cancelAll();
+        dispatcher.interrupt();
+        pool.shutdown();
+    }
+
+    private static void releaseCancelled(List<SimulationJob> jobs) {
+        for (SimulationJob job : jobs) {
+            job.cancel();
+            job.release();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            SimulationJob job;
+            synchronized (this) {
+                try {
+                    while (queue.isEmpty()) {
+                        wait();
+                    }
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                job = queue.poll();
+                currentJob = job;
+            }
+            try {
+                if (!job.isCancelled()) {
+                    job.run(pool);
+                }
+            }
+            catch (Exception e) {
+                System.out.println("Simulation job " + job.getId() + " failed.");
+                e.printStackTrace();
+            }
+            finally {
+                job.release();
+                synchronized (this) {
+                    currentJob = null;
+                }
+            }
+        }
+    }
+}
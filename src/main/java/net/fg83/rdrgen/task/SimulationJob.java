@@ -0,0 +1,50 @@
+package net.fg83.rdrgen.task;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A unit of work run by the {@link SimulationEngine}.
+ *
+ * The engine gives every submitted job an ID and runs queued jobs one at a time on its worker pool.
+ * A job can be cancelled at any time: a queued job is dropped before it starts, and a running job
+ * is expected to check {@link #isCancelled()} between chunks of work and return early. Whatever a
+ * job holds on to is released by {@link #release()} as soon as it finishes or is cancelled, so its
+ * memory does not outlive it.
+ */
+public abstract class SimulationJob {
+    private volatile int id;
+    private volatile boolean cancelled = false;
+
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Asks the job to stop. A running job stops at its next check, so this returns immediately.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Runs the job on the calling thread, using the engine's pool for parallel work.
+     *
+     * @param pool The engine's worker pool.
+     */
+    protected abstract void run(ForkJoinPool pool);
+
+    /**
+     * Drops the job's references to its working data. Called once after {@link #run(ForkJoinPool)}
+     * returns or throws, whether or not the job was cancelled.
+     */
+    protected void release() {
+    }
+}
@@ -0,0 +1,107 @@
+package net.fg83.rdrgen.task;
+
+import net.fg83.rdrgen.ir.EnergyAccumulator;
+import net.fg83.rdrgen.metrics.RunMetrics;
+import net.fg83.rdrgen.metrics.TraceBatchEvent;
+import net.fg83.rdrgen.trace.FibonacciDirections;
+import net.fg83.rdrgen.trace.RayBatch;
+import net.fg83.rdrgen.trace.TraceContext;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates and traces a range of ray directions inside a {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * Ranges larger than {@link #CHUNK_SIZE} are split in half and forked, so the pool only ever holds
+ * a logarithmic number of pending tasks per worker instead of one task per ray. A chunk is generated
+ * straight into the worker's reused {@link RayBatch}, traced, and its arrivals are added to the worker's
+ * histograms, so tracing does not allocate per chunk either.
+ *
+ * Every chunk checks whether its {@link SimulationJob} was cancelled first, and skips its rays if
+ * so, so a cancelled simulation drains from the pool within one chunk per worker.
+ *
+ * Each chunk adds its totals and the time it spent generating, tracing and accumulating to the
+ * {@link RunMetrics} of the run in one go, so workers never contend on a per-ray counter, and
+ * emits a {@link TraceBatchEvent} for Java Flight Recorder.
+ */
+public class TraceRaysAction extends RecursiveAction {
+    public static final int CHUNK_SIZE = RayBatch.DEFAULT_CAPACITY;
+
+    private final FibonacciDirections directions;
+    private final TraceContext context;
+    private final EnergyAccumulator accumulator;
+    private final ThreadLocal<RayBatch> batches;
+    private final SimulationJob job;
+    private final RunMetrics metrics;
+    private final int from;
+    private final int to;
+
+    /**
+     * Creates the root action covering every direction.
+     *
+     * @param directions  The directions to cast rays in.
+     * @param context     The resolved volume, receiver and attenuation data. Rays start at the source.
+     * @param accumulator The accumulator to add the arrivals at every receiver to.
+     * @param batches     The reused ray batch of every worker thread, holding at least {@link #CHUNK_SIZE} rays.
+     * @param job         The job the rays are traced for, checked for cancellation.
+     * @param metrics     The metrics of the run to add the traced rays to.
+     */
+    public TraceRaysAction(FibonacciDirections directions, TraceContext context, EnergyAccumulator accumulator, ThreadLocal<RayBatch> batches, SimulationJob job, RunMetrics metrics) {
+        this(directions, context, accumulator, batches, job, metrics, 0, directions.size());
+    }
+
+    private TraceRaysAction(FibonacciDirections directions, TraceContext context, EnergyAccumulator accumulator, ThreadLocal<RayBatch> batches, SimulationJob job, RunMetrics metrics, int from, int to) {
+        this.directions = directions;
+        this.context = context;
+        this.accumulator = accumulator;
+        this.batches = batches;
+        this.job = job;
+        this.metrics = metrics;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (job.isCancelled()) {
+            return;
+        }
+        if (to - from > CHUNK_SIZE) {
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new TraceRaysAction(directions, context, accumulator, batches, job, metrics, from, mid),
+                    new TraceRaysAction(directions, context, accumulator, batches, job, metrics, mid, to)
+            );
+            return;
+        }
+
+        TraceBatchEvent event = new TraceBatchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        RayBatch batch = batches.get();
+        batch.clear();
+        directions.addRays(batch, from, to, context.getSourceX(), context.getSourceY(), context.getSourceZ());
+        long populated = System.nanoTime();
+        batch.trace(context);
+        long traced = System.nanoTime();
+        accumulator.addHits(batch);
+        long accumulated = System.nanoTime();
+
+        metrics.addPhaseTime(RunMetrics.Phase.POPULATE, populated - start);
+        metrics.addPhaseTime(RunMetrics.Phase.TRACE, traced - populated);
+        metrics.addPhaseTime(RunMetrics.Phase.ACCUMULATE, accumulated - traced);
+        metrics.addBatch(batch);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.job = job.getId();
+            event.rays = batch.size();
+            event.bounces = batch.getBounceCount();
+            event.arrivals = batch.getArrivalCount();
+            event.populateTime = populated - start;
+            event.traceTime = traced - populated;
+            event.accumulateTime = accumulated - traced;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package net.fg83.rdrgen.trace;
+
+import net.fg83.rdrgen.AbsorptionCoefficient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The frequency bands a simulation tracks energy in, either six octave bands (125 Hz to 4 kHz) or
+ * eighteen third-octave bands (100 Hz to 5 kHz).
+ *
+ * A band set owns the {@link EnergyKernel} used to update per-band energy, and converts absorption
+ * coefficients into per-band factors laid out with the kernel's stride. Coefficients do not need to
+ * be given at every band: missing bands are interpolated linearly over log frequency between the
+ * nearest given bands, and held constant beyond the lowest and highest ones. Octave data therefore
+ * works with third-octave bands, and third-octave data is used as-is.
+ */
+public final class BandSet {
+    public enum Resolution {
+        OCTAVE(125, 250, 500, 1000, 2000, 4000),
+        THIRD_OCTAVE(100, 125, 160, 200, 250, 315, 400, 500, 630, 800, 1000, 1250, 1600, 2000, 2500, 3150, 4000, 5000);
+
+        private final int[] frequencies;
+
+        Resolution(int... frequencies) {
+            this.frequencies = frequencies;
+        }
+    }
+
+    private final Resolution resolution;
+    private final int[] frequencies;
+    private final EnergyKernel kernel;
+
+    private BandSet(Resolution resolution, EnergyKernel kernel) {
+        this.resolution = resolution;
+        this.frequencies = resolution.frequencies.clone();
+        this.kernel = kernel;
+    }
+
+    /**
+     * Creates a band set.
+     *
+     * @param resolution The band resolution.
+     * @param vectorize  Whether to use the vectorized energy kernel if the JVM supports it.
+     * @return The band set.
+     */
+    public static BandSet create(Resolution resolution, boolean vectorize) {
+        return new BandSet(resolution, EnergyKernel.create(resolution.frequencies.length, vectorize));
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public int getCount() {
+        return frequencies.length;
+    }
+
+    /**
+     * Returns the length of one run of per-band values, which is at least {@link #getCount()}.
+     *
+     * @return the stride between the bands of consecutive rays or materials.
+     */
+    public int getStride() {
+        return kernel.getStride();
+    }
+
+    public int getFrequency(int band) {
+        return frequencies[band];
+    }
+
+    public int[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    public EnergyKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Converts absorption coefficients into per-band energy factors {@code (1 - coef)}. An empty list
+     * yields factors of 1.0.
+     *
+     * @param coefficients The absorption coefficients, at any frequencies.
+     * @return {@link #getStride()} factors; padding lanes are 1.0.
+     */
+    public double[] toAttenuation(List<AbsorptionCoefficient> coefficients) {
+        double[] factors = new double[getStride()];
+        Arrays.fill(factors, 1.0);
+        double[] coefs = interpolate(coefficients);
+        for (int b = 0; b < frequencies.length; b++) {
+            factors[b] = 1 - coefs[b];
+        }
+        return factors;
+    }
+
+    /**
+     * Interpolates coefficients given at any frequencies onto the bands. An empty list yields
+     * coefficients of 0.
+     *
+     * @param coefficients The coefficients, at any frequencies.
+     * @return {@link #getStride()} coefficients; padding lanes are 0.
+     */
+    public double[] toCoefficients(List<AbsorptionCoefficient> coefficients) {
+        return Arrays.copyOf(interpolate(coefficients), getStride());
+    }
+
+    /**
+     * Converts per-block absorption coefficients of a medium into the natural logarithm of their
+     * energy factors, as used by {@link EnergyKernel#attenuate(double[], int, double[], double)}.
+     *
+     * @param coefficients The absorption coefficients of the medium for one block of travel.
+     * @return {@link #getStride()} log factors; padding lanes are 0.
+     */
+    public double[] toLogAttenuation(List<AbsorptionCoefficient> coefficients) {
+        double[] factors = toAttenuation(coefficients);
+        for (int b = 0; b < factors.length; b++) {
+            factors[b] = Math.log(factors[b]);
+        }
+        return factors;
+    }
+
+    private double[] interpolate(List<AbsorptionCoefficient> coefficients) {
+        double[] coefs = new double[frequencies.length];
+        if (coefficients.isEmpty()) {
+            return coefs;
+        }
+        List<AbsorptionCoefficient> sorted = new ArrayList<>(coefficients);
+        sorted.sort(Comparator.comparingInt(AbsorptionCoefficient::getFrequency));
+
+        for (int b = 0; b < frequencies.length; b++) {
+            int frequency = frequencies[b];
+            AbsorptionCoefficient first = sorted.getFirst();
+            AbsorptionCoefficient last = sorted.getLast();
+            if (frequency <= first.getFrequency()) {
+                coefs[b] = first.getCoefficient();
+                continue;
+            }
+            if (frequency >= last.getFrequency()) {
+                coefs[b] = last.getCoefficient();
+                continue;
+            }
+            for (int i = 1; i < sorted.size(); i++) {
+                AbsorptionCoefficient upper = sorted.get(i);
+                if (upper.getFrequency() >= frequency) {
+                    AbsorptionCoefficient lower = sorted.get(i - 1);
+                    double position = Math.log((double) frequency / lower.getFrequency()) / Math.log((double) upper.getFrequency() / lower.getFrequency());
+                    coefs[b] = lower.getCoefficient() + (upper.getCoefficient() - lower.getCoefficient()) * position;
+                    break;
+                }
+            }
+        }
+        return coefs;
+    }
+}
@@ -0,0 +1,99 @@
+package net.fg83.rdrgen.trace;
+
+/**
+ * Per-band energy arithmetic used by the bounce loop.
+ *
+ * Every ray and every material stores its bands as one contiguous run of doubles. Runs are
+ * {@link #getStride()} long, which may be longer than the number of bands so that a vectorized
+ * kernel can process whole vectors without a tail loop. Padding lanes hold an energy of 0 and
+ * factors of 1.0 (a log factor of 0), so they never change the result.
+ *
+ * Use {@link #create(int, boolean)} to get the fastest kernel available in the running JVM.
+ */
+public abstract class EnergyKernel {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    protected final int bands;
+    protected final int stride;
+
+    protected EnergyKernel(int bands, int stride) {
+        this.bands = bands;
+        this.stride = stride;
+    }
+
+    /**
+     * Creates an energy kernel for the given band count. The vectorized kernel is only used when
+     * the {@code jdk.incubator.vector} module was added to the JVM (for example with
+     * {@code --add-modules jdk.incubator.vector}); otherwise the scalar kernel is returned.
+     *
+     * @param bands     The number of frequency bands.
+     * @param vectorize Whether to use the vectorized kernel if it is available.
+     * @return The energy kernel.
+     */
+    public static EnergyKernel create(int bands, boolean vectorize) {
+        if (vectorize && isVectorApiAvailable()) {
+            try {
+                return new VectorEnergyKernel(bands);
+            }
+            catch (LinkageError e) {
+                System.out.println("Vector API unavailable, falling back to scalar energy kernels: " + e);
+            }
+        }
+        return new ScalarEnergyKernel(bands);
+    }
+
+    public static boolean isVectorApiAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Multiplies a run of energy by a run of factors, lane by lane.
+     *
+     * @param energy       The energy array to update.
+     * @param offset       The start of the run in the energy array.
+     * @param factors      The factor array.
+     * @param factorOffset The start of the run in the factor array.
+     */
+    public abstract void multiply(double[] energy, int offset, double[] factors, int factorOffset);
+
+    /**
+     * Attenuates a run of energy by air over a distance, computing {@code energy *= exp(logFactor * distance)}
+     * for every lane. This is equivalent to raising the per-block factor to the power of the distance.
+     *
+     * @param energy     The energy array to update.
+     * @param offset     The start of the run in the energy array.
+     * @param logFactors The natural logarithm of the per-block air factor of each band.
+     * @param distance   The distance traveled, in blocks.
+     */
+    public abstract void attenuate(double[] energy, int offset, double[] logFactors, double distance);
+
+    /**
+     * Multiplies every lane of a run of energy by the same factor.
+     *
+     * @param energy The energy array to update.
+     * @param offset The start of the run in the energy array.
+     * @param factor The factor.
+     */
+    public abstract void scale(double[] energy, int offset, double factor);
+
+    /**
+     * Returns the largest energy in a run.
+     *
+     * @param energy The energy array.
+     * @param offset The start of the run.
+     * @return the maximum over all lanes.
+     */
+    public abstract double max(double[] energy, int offset);
+
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,96 @@
+package net.fg83.rdrgen.trace;
+
+import java.util.Random;
+
+/**
+ * A configurable number of ray directions spread uniformly over the sphere, addressable by index.
+ *
+ * Directions follow the Fibonacci (golden angle) spiral: direction {@code i} of {@code N} lies at
+ * height {@code 1 - (2i + 1) / N} and is rotated by {@code i} golden angles around the vertical
+ * axis. Every direction covers the same solid angle of {@code 4 pi / N}, so rays carry equal
+ * weight and any number of rays can be cast. Each direction is computed on its own, which lets
+ * ray generation be split across threads.
+ *
+ * A set can be randomly rotated, so that successive rounds of rays sample different directions
+ * while each round on its own stays uniform.
+ */
+public final class FibonacciDirections {
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    private static final double[] IDENTITY = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+
+    private final int count;
+    // Row-major 3x3 rotation applied to every direction
+    private final double[] rotation;
+
+    /**
+     * @param count The number of directions.
+     */
+    public FibonacciDirections(int count) {
+        this(count, IDENTITY);
+    }
+
+    private FibonacciDirections(int count, double[] rotation) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Ray count must be positive, got " + count);
+        }
+        this.count = count;
+        this.rotation = rotation;
+    }
+
+    /**
+     * Creates a set of directions with a uniformly random orientation.
+     *
+     * @param count  The number of directions.
+     * @param random The source of the rotation.
+     * @return The rotated directions.
+     */
+    public static FibonacciDirections randomlyRotated(int count, Random random) {
+        // Uniform random unit quaternion (Shoemake)
+        double u1 = random.nextDouble();
+        double u2 = random.nextDouble() * 2 * Math.PI;
+        double u3 = random.nextDouble() * 2 * Math.PI;
+        double a = Math.sqrt(1 - u1);
+        double b = Math.sqrt(u1);
+        double qx = a * Math.sin(u2);
+        double qy = a * Math.cos(u2);
+        double qz = b * Math.sin(u3);
+        double qw = b * Math.cos(u3);
+        return new FibonacciDirections(count, new double[]{
+                1 - 2 * (qy * qy + qz * qz), 2 * (qx * qy - qz * qw), 2 * (qx * qz + qy * qw),
+                2 * (qx * qy + qz * qw), 1 - 2 * (qx * qx + qz * qz), 2 * (qy * qz - qx * qw),
+                2 * (qx * qz - qy * qw), 2 * (qy * qz + qx * qw), 1 - 2 * (qx * qx + qy * qy)
+        });
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Adds the rays in a range of directions to a batch.
+     *
+     * @param batch The batch to fill. It must have room for {@code to - from} rays.
+     * @param from  The index of the first direction, inclusive.
+     * @param to    The index of the last direction, exclusive.
+     * @param x     Origin x of the rays.
+     * @param y     Origin y of the rays.
+     * @param z     Origin z of the rays.
+     */
+    public void addRays(RayBatch batch, int from, int to, double x, double y, double z) {
+        double[] r = rotation;
+        for (int i = from; i < to; i++) {
+            double sy = 1 - (2.0 * i + 1) / count;
+            double radius = Math.sqrt(Math.max(0, 1 - sy * sy));
+            double angle = GOLDEN_ANGLE * i;
+            double sx = Math.cos(angle) * radius;
+            double sz = Math.sin(angle) * radius;
+            batch.add(
+                    x, y, z,
+                    r[0] * sx + r[1] * sy + r[2] * sz,
+                    r[3] * sx + r[4] * sy + r[5] * sz,
+                    r[6] * sx + r[7] * sy + r[8] * sz
+            );
+        }
+    }
+}
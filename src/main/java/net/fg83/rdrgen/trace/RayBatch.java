@@ -0,0 +1,592 @@
+package net.fg83.rdrgen.trace;
+
+import net.fg83.rdrgen.volume.AcousticVolume;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A batch of rays stored as parallel primitive arrays (structure of arrays).
+ *
+ * Each ray has a position, a direction, and one energy value per frequency band of its
+ * {@link BandSet}. Energy is laid out ray by ray in contiguous runs of the band set's stride, so the
+ * bands of ray {@code i} start at {@code energy[i * stride]} and are updated a whole run at a time
+ * by the {@link EnergyKernel}.
+ *
+ * {@link #trace(TraceContext)} walks every ray in the batch through the captured volume, bouncing
+ * off surfaces until the ray escapes or its energy dissipates. Every time a ray enters a receiver
+ * sphere, an arrival is recorded with the receiver, the delay, the direction of the ray and the
+ * energy at that point, in the same structure-of-arrays layout. The bounce loop works entirely on primitive locals and a single
+ * reused {@link VoxelHit}, and the arrival arrays only grow until they fit the busiest batch, so
+ * tracing does not allocate once warmed up. A batch can be cleared and refilled to be reused.
+ *
+ * While tracing, the batch also tallies how many times its rays bounced and why each of them
+ * stopped, in plain fields that are summed into the run's metrics once per batch.
+ */
+public class RayBatch {
+    public static final int DEFAULT_MAX_DISTANCE = 1700;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public static final double SAMPLES_PER_BLOCK = 140.16;
+
+    private static final double DISSIPATION_THRESHOLD = 0.00000001;
+
+    // Why a ray stopped being traced
+    public static final int END_RECEIVER = 0;
+    public static final int END_ESCAPED = 1;
+    public static final int END_TIME_LIMIT = 2;
+    public static final int END_DISSIPATED = 3;
+    public static final int END_ROULETTE = 4;
+    public static final int TERMINATION_REASONS = 5;
+
+    private static final String[] TERMINATION_NAMES = {"receiver", "escaped", "time_limit", "dissipated", "roulette"};
+
+    // Bucket b > 0 of the bounce histogram counts rays with 2^(b-1) to 2^b - 1 bounces
+    public static final int BOUNCE_HISTOGRAM_BUCKETS = 16;
+
+    private final int capacity;
+    private int size = 0;
+
+    private final BandSet bandSet;
+    private final EnergyKernel kernel;
+    private final int stride;
+
+    private final double[] positionX;
+    private final double[] positionY;
+    private final double[] positionZ;
+    private final double[] directionX;
+    private final double[] directionY;
+    private final double[] directionZ;
+    private final double[] energy;
+
+    private int arrivalCount = 0;
+    private int[] arrivalReceiver;
+    private int[] arrivalDelay;
+    private double[] arrivalDirectionX;
+    private double[] arrivalDirectionY;
+    private double[] arrivalDirectionZ;
+    private double[] arrivalEnergy;
+
+    private final VoxelHit voxelHit = new VoxelHit();
+    private final VoxelHit shadowHit = new VoxelHit();
+    private final double[] scatteringWeights;
+
+    private long bounceCount = 0;
+    private final int[] terminations = new int[TERMINATION_REASONS];
+    private final int[] bounceHistogram = new int[BOUNCE_HISTOGRAM_BUCKETS];
+
+    public RayBatch(int capacity, BandSet bandSet) {
+        this.capacity = capacity;
+        this.bandSet = bandSet;
+        this.kernel = bandSet.getKernel();
+        this.stride = bandSet.getStride();
+        this.positionX = new double[capacity];
+        this.positionY = new double[capacity];
+        this.positionZ = new double[capacity];
+        this.directionX = new double[capacity];
+        this.directionY = new double[capacity];
+        this.directionZ = new double[capacity];
+        this.energy = new double[capacity * stride];
+        this.arrivalReceiver = new int[capacity];
+        this.arrivalDelay = new int[capacity];
+        this.arrivalDirectionX = new double[capacity];
+        this.arrivalDirectionY = new double[capacity];
+        this.arrivalDirectionZ = new double[capacity];
+        this.arrivalEnergy = new double[capacity * stride];
+        this.scatteringWeights = new double[stride];
+        Arrays.fill(scatteringWeights, 1.0);
+    }
+
+    /**
+     * Adds a ray with full energy in every band.
+     *
+     * @param x  Origin x.
+     * @param y  Origin y.
+     * @param z  Origin z.
+     * @param dx Direction x. The direction must be normalized.
+     * @param dy Direction y.
+     * @param dz Direction z.
+     */
+    public void add(double x, double y, double z, double dx, double dy, double dz) {
+        if (size == capacity) {
+            throw new IllegalStateException("Ray batch is full (" + capacity + " rays)");
+        }
+        int i = size++;
+        positionX[i] = x;
+        positionY[i] = y;
+        positionZ[i] = z;
+        directionX[i] = dx;
+        directionY[i] = dy;
+        directionZ[i] = dz;
+        Arrays.fill(energy, i * stride, i * stride + bandSet.getCount(), 1.0);
+        Arrays.fill(energy, i * stride + bandSet.getCount(), i * stride + stride, 0.0);
+    }
+
+    public void clear() {
+        size = 0;
+        arrivalCount = 0;
+        resetTallies();
+    }
+
+    private void resetTallies() {
+        bounceCount = 0;
+        Arrays.fill(terminations, 0);
+        Arrays.fill(bounceHistogram, 0);
+    }
+
+    public BandSet getBandSet() {
+        return bandSet;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Traces every ray in the batch.
+     *
+     * For each bounce the ray walks the volume to the next surface, and the straight segment up to
+     * that surface is intersected with every receiver sphere. A ray that enters a sphere arrives at
+     * the exact entry distance. With a single configured receiver the ray stops there, as before; the
+     * receivers of a grid, even if only one of them is left, are transparent so they do not shadow each other, and the ray carries on. On a surface hit, the energy is attenuated by the air over
+     * the distance traveled and by the captured material of the hit block, plus the blocks sharing
+     * the seam or corner when the hit lands on one, and the direction is reflected about the struck
+     * face.
+     *
+     * Materials scatter part of the reflected energy diffusely, see
+     * {@link TraceContext#getMaterialScattering()}. At every bounce, the scattered energy that would
+     * reach each receiver is deposited straight away by a shadow cast from the hit point ("diffuse
+     * rain"): the ray's energy times the scattering coefficient times the share of a Lambert
+     * reflection that falls into the receiver sphere. The ray then carries on in a diffuse direction
+     * with a probability of the mean scattering coefficient, and specularly otherwise, with its
+     * bands reweighted so each band's expected energy follows its own coefficient. As the rain
+     * already accounts for energy scattered towards a receiver, a segment following a diffuse
+     * bounce does not record arrivals. Every bounce thus contributes to the echogram, and the
+     * diffuse tail is smoother for the same number of rays.
+     *
+     * Tracing of a ray stops when it reaches a lone receiver, escapes the volume, travels further
+     * than the longest delay the impulse response keeps, all bands fall below the dissipation
+     * threshold, or it loses the Russian roulette played once its energy is low, see
+     * {@link TraceContext#getRouletteThreshold()}.
+     *
+     * Arrivals along a purely specular path the image-source stage computes exactly, that is with
+     * at most {@link TraceContext#getImageSourceOrder()} reflections all within the image-source
+     * radius of the source, are not recorded so their energy is not counted twice.
+     *
+     * @param context The resolved volume, receiver and attenuation data.
+     */
+    public void trace(TraceContext context) {
+        AcousticVolume volume = context.getVolume();
+        double sourceX = context.getSourceX();
+        double sourceY = context.getSourceY();
+        double sourceZ = context.getSourceZ();
+        double[] receivers = context.getReceiverPositions();
+        int receiverCount = context.getReceiverCount();
+        boolean absorbingReceiver = context.isAbsorbingReceiver();
+        double receiverRadius = context.getReceiverRadius();
+        double[] materialAttenuation = context.getMaterialAttenuation();
+        double[] materialScattering = context.getMaterialScattering();
+        int bands = bandSet.getCount();
+        double[] logAirAttenuation = context.getLogAirAttenuation();
+        double maxDistance = context.getMaxDistance();
+        int imageSourceOrder = context.getImageSourceOrder();
+        double imageSourceRadius = context.getImageSourceRadius();
+        double maxTraveled = context.getMaxDelaySamples() / SAMPLES_PER_BLOCK;
+        double rouletteThreshold = context.getRouletteThreshold();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        VoxelHit hit = voxelHit;
+        arrivalCount = 0;
+        resetTallies();
+
+        for (int i = 0; i < size; i++) {
+            double px = positionX[i];
+            double py = positionY[i];
+            double pz = positionZ[i];
+            double dx = directionX[i];
+            double dy = directionY[i];
+            double dz = directionZ[i];
+            double traveled = 0;
+            int energyOffset = i * stride;
+            int reflections = 0;
+            boolean nearSource = true;
+            boolean specularPath = true;
+            boolean specularSegment = true;
+            int termination;
+
+            while (true) {
+                double castLimit = Math.min(maxDistance, maxTraveled - traveled);
+                boolean hitBlock = castLimit > 0 && VoxelTraversal.cast(volume, px, py, pz, dx, dy, dz, castLimit, hit);
+                double hx = 0;
+                double hy = 0;
+                double hz = 0;
+                double castDistance = castLimit;
+                if (hitBlock) {
+                    hx = roundToPrecision(hit.x);
+                    hy = roundToPrecision(hit.y);
+                    hz = roundToPrecision(hit.z);
+                    double cx = hx - px;
+                    double cy = hy - py;
+                    double cz = hz - pz;
+                    castDistance = Math.sqrt(cx * cx + cy * cy + cz * cz);
+                }
+
+                boolean counted = specularSegment && (imageSourceOrder <= 0 || reflections > imageSourceOrder || !nearSource || !specularPath);
+                double firstArrival = -1;
+                for (int r = 0; r < receiverCount; r++) {
+                    double arrival = segmentSphereEntry(px, py, pz, dx, dy, dz, castDistance, receivers[3 * r], receivers[3 * r + 1], receivers[3 * r + 2], receiverRadius);
+                    if (arrival < 0) {
+                        continue;
+                    }
+                    if (counted) {
+                        addArrival(r, traveled + arrival, dx, dy, dz, energyOffset, logAirAttenuation, arrival);
+                    }
+                    firstArrival = firstArrival < 0 ? arrival : Math.min(firstArrival, arrival);
+                }
+                if (firstArrival >= 0 && absorbingReceiver) {
+                    px += dx * firstArrival;
+                    py += dy * firstArrival;
+                    pz += dz * firstArrival;
+                    termination = END_RECEIVER;
+                    break;
+                }
+                if (!hitBlock) {
+                    // The impulse response only ends the ray when the cast walked all the way to the
+                    // remaining budget; a ray that left the volume before it has escaped
+                    boolean reachedLimit = castLimit <= 0 || hit.distance <= castLimit;
+                    termination = reachedLimit && maxTraveled - traveled <= maxDistance ? END_TIME_LIMIT : END_ESCAPED;
+                    break;
+                }
+
+                kernel.attenuate(energy, energyOffset, logAirAttenuation, castDistance);
+                traveled += castDistance;
+
+                applyMaterial(materialAttenuation, hit.material, energyOffset);
+                applySharedBlockMaterials(volume, materialAttenuation, hit, hx, hy, hz, energyOffset);
+
+                int scatteringOffset = hit.material * stride;
+                double meanScattering = 0;
+                for (int b = 0; b < bands; b++) {
+                    meanScattering += materialScattering[scatteringOffset + b];
+                }
+                meanScattering /= bands;
+                if (meanScattering > 0) {
+                    scatterToReceivers(volume, receivers, receiverCount, receiverRadius, hit.face, hx, hy, hz, traveled, maxTraveled, energyOffset, logAirAttenuation, materialScattering, scatteringOffset);
+                }
+
+                specularSegment = meanScattering <= 0 || random.nextDouble() >= meanScattering;
+                if (specularSegment) {
+                    // Reflect about the struck face; for an axis-aligned normal this flips one component
+                    switch (hit.face) {
+                        case VoxelHit.FACE_WEST, VoxelHit.FACE_EAST -> dx = -dx;
+                        case VoxelHit.FACE_DOWN, VoxelHit.FACE_UP -> dy = -dy;
+                        default -> dz = -dz;
+                    }
+                    if (meanScattering > 0) {
+                        for (int b = 0; b < bands; b++) {
+                            scatteringWeights[b] = (1 - materialScattering[scatteringOffset + b]) / (1 - meanScattering);
+                        }
+                        kernel.multiply(energy, energyOffset, scatteringWeights, 0);
+                    }
+                }
+                else {
+                    // Cosine-weighted direction in the hemisphere of the struck face
+                    double sinTheta = Math.sqrt(random.nextDouble());
+                    double cosTheta = Math.sqrt(1 - sinTheta * sinTheta);
+                    double phi = 2 * Math.PI * random.nextDouble();
+                    double tangent = sinTheta * Math.cos(phi);
+                    double bitangent = sinTheta * Math.sin(phi);
+                    switch (hit.face) {
+                        case VoxelHit.FACE_WEST, VoxelHit.FACE_EAST -> {
+                            dx = VoxelHit.normalX(hit.face) * cosTheta;
+                            dy = tangent;
+                            dz = bitangent;
+                        }
+                        case VoxelHit.FACE_DOWN, VoxelHit.FACE_UP -> {
+                            dx = tangent;
+                            dy = VoxelHit.normalY(hit.face) * cosTheta;
+                            dz = bitangent;
+                        }
+                        default -> {
+                            dx = tangent;
+                            dy = bitangent;
+                            dz = VoxelHit.normalZ(hit.face) * cosTheta;
+                        }
+                    }
+                    for (int b = 0; b < bands; b++) {
+                        scatteringWeights[b] = materialScattering[scatteringOffset + b] / meanScattering;
+                    }
+                    kernel.multiply(energy, energyOffset, scatteringWeights, 0);
+                    specularPath = false;
+                }
+                px = hx;
+                py = hy;
+                pz = hz;
+                reflections++;
+                nearSource &= Math.abs(hx - sourceX) <= imageSourceRadius
+                        && Math.abs(hy - sourceY) <= imageSourceRadius
+                        && Math.abs(hz - sourceZ) <= imageSourceRadius;
+
+                double strongest = kernel.max(energy, energyOffset);
+                if (strongest <= DISSIPATION_THRESHOLD) {
+                    termination = END_DISSIPATED;
+                    break;
+                }
+                if (strongest < rouletteThreshold) {
+                    double survival = strongest / rouletteThreshold;
+                    if (random.nextDouble() >= survival) {
+                        termination = END_ROULETTE;
+                        break;
+                    }
+                    kernel.scale(energy, energyOffset, 1.0 / survival);
+                }
+            }
+
+            positionX[i] = px;
+            positionY[i] = py;
+            positionZ[i] = pz;
+            directionX[i] = dx;
+            directionY[i] = dy;
+            directionZ[i] = dz;
+            terminations[termination]++;
+            bounceCount += reflections;
+            bounceHistogram[Math.min(32 - Integer.numberOfLeadingZeros(reflections), BOUNCE_HISTOGRAM_BUCKETS - 1)]++;
+        }
+    }
+
+    /**
+     * Deposits the energy a bounce scatters towards every receiver it can see. A Lambert
+     * reflection sends the share {@code 2 cos(theta) (1 - cos(gamma))} of its energy into a sphere
+     * at angle {@code theta} from the face normal that subtends the half-angle {@code gamma}. The
+     * arrival is timed where the path enters the sphere, like the specular arrivals of the rays.
+     */
+    private void scatterToReceivers(AcousticVolume volume, double[] receivers, int receiverCount, double receiverRadius, int face, double hx, double hy, double hz, double traveled, double maxTraveled, int energyOffset, double[] logAirAttenuation, double[] materialScattering, int scatteringOffset) {
+        int nx = VoxelHit.normalX(face);
+        int ny = VoxelHit.normalY(face);
+        int nz = VoxelHit.normalZ(face);
+        for (int r = 0; r < receiverCount; r++) {
+            double vx = receivers[3 * r] - hx;
+            double vy = receivers[3 * r + 1] - hy;
+            double vz = receivers[3 * r + 2] - hz;
+            double distance = Math.sqrt(vx * vx + vy * vy + vz * vz);
+            double entry = Math.max(0, distance - receiverRadius);
+            double cosTheta = (vx * nx + vy * ny + vz * nz) / distance;
+            if (!(cosTheta > 0) || traveled + entry > maxTraveled) {
+                continue;
+            }
+            double ux = vx / distance;
+            double uy = vy / distance;
+            double uz = vz / distance;
+
+            double share = 1;
+            if (distance > receiverRadius) {
+                if (VoxelTraversal.cast(volume, hx, hy, hz, ux, uy, uz, entry, shadowHit)) {
+                    continue;
+                }
+                // 1 - cos(gamma), written so it stays accurate for distant receivers
+                double sinGammaSquared = (receiverRadius / distance) * (receiverRadius / distance);
+                share = Math.min(1, 2 * cosTheta * sinGammaSquared / (1 + Math.sqrt(1 - sinGammaSquared)));
+            }
+            int a = addArrival(r, traveled + entry, ux, uy, uz, energyOffset, logAirAttenuation, entry);
+            kernel.multiply(arrivalEnergy, a * stride, materialScattering, scatteringOffset);
+            kernel.scale(arrivalEnergy, a * stride, share);
+        }
+    }
+
+    /**
+     * Records the arrival of a ray at a receiver, with the ray's current energy attenuated by the
+     * air between its last bounce and the sphere.
+     *
+     * @return the index of the arrival.
+     */
+    private int addArrival(int receiver, double traveled, double dx, double dy, double dz, int energyOffset, double[] logAirAttenuation, double distanceFromBounce) {
+        if (arrivalCount == arrivalReceiver.length) {
+            int grown = arrivalCount * 2;
+            arrivalReceiver = Arrays.copyOf(arrivalReceiver, grown);
+            arrivalDelay = Arrays.copyOf(arrivalDelay, grown);
+            arrivalDirectionX = Arrays.copyOf(arrivalDirectionX, grown);
+            arrivalDirectionY = Arrays.copyOf(arrivalDirectionY, grown);
+            arrivalDirectionZ = Arrays.copyOf(arrivalDirectionZ, grown);
+            arrivalEnergy = Arrays.copyOf(arrivalEnergy, grown * stride);
+        }
+        int a = arrivalCount++;
+        arrivalReceiver[a] = receiver;
+        arrivalDelay[a] = (int) Math.round(traveled * SAMPLES_PER_BLOCK);
+        arrivalDirectionX[a] = dx;
+        arrivalDirectionY[a] = dy;
+        arrivalDirectionZ[a] = dz;
+        System.arraycopy(energy, energyOffset, arrivalEnergy, a * stride, stride);
+        kernel.attenuate(arrivalEnergy, a * stride, logAirAttenuation, distanceFromBounce);
+        return a;
+    }
+
+    /**
+     * Applies the material attenuation of the blocks that share the seam or corner a hit landed on.
+     * A hit with two integer coordinates lies on a seam and also touches the block diagonally across
+     * it; a hit with three lies on a corner and touches two more blocks. Empty blocks have no effect.
+     */
+    private void applySharedBlockMaterials(AcousticVolume volume, double[] materialAttenuation, VoxelHit hit, double hx, double hy, double hz, int energyOffset) {
+        boolean xInt = isInteger(hx);
+        boolean yInt = isInteger(hy);
+        boolean zInt = isInteger(hz);
+        int integerValues = (xInt ? 1 : 0) + (yInt ? 1 : 0) + (zInt ? 1 : 0);
+        if (integerValues < 2) {
+            return;
+        }
+
+        int ox = xInt ? (Math.round(hx) == hit.blockX ? -1 : 1) : 0;
+        int oy = yInt ? (Math.round(hy) == hit.blockY ? -1 : 1) : 0;
+        int oz = zInt ? (Math.round(hz) == hit.blockZ ? -1 : 1) : 0;
+
+        if (integerValues == 2) {
+            applyMaterial(materialAttenuation, volume.getMaterial(hit.blockX + ox, hit.blockY + oy, hit.blockZ + oz), energyOffset);
+        }
+        else {
+            applyMaterial(materialAttenuation, volume.getMaterial(hit.blockX + ox, hit.blockY + oy, hit.blockZ), energyOffset);
+            applyMaterial(materialAttenuation, volume.getMaterial(hit.blockX + ox, hit.blockY + oy, hit.blockZ + oz), energyOffset);
+        }
+    }
+
+    private void applyMaterial(double[] materialAttenuation, int material, int energyOffset) {
+        if (material == AcousticVolume.EMPTY) {
+            return;
+        }
+        kernel.multiply(energy, energyOffset, materialAttenuation, material * stride);
+    }
+
+    /**
+     * Intersects the segment starting at {@code (px, py, pz)} with unit direction {@code (dx, dy, dz)}
+     * and the given length with a sphere. Only the point where the segment enters the sphere counts,
+     * so a segment that starts inside it, like the first segment of every ray, does not hit.
+     *
+     * @return the distance along the segment to the entry point, or -1 if the segment does not enter
+     *         the sphere.
+     */
+    private static double segmentSphereEntry(double px, double py, double pz, double dx, double dy, double dz, double length, double cx, double cy, double cz, double radius) {
+        double ox = px - cx;
+        double oy = py - cy;
+        double oz = pz - cz;
+        double b = ox * dx + oy * dy + oz * dz;
+        double c = ox * ox + oy * oy + oz * oz - radius * radius;
+        if (c <= 0 || b >= 0) {
+            // Starts inside the sphere, or points away from its centre
+            return -1;
+        }
+        double discriminant = b * b - c;
+        if (discriminant < 0) {
+            return -1;
+        }
+        double entry = -b - Math.sqrt(discriminant);
+        return entry <= length ? entry : -1;
+    }
+
+    private static double roundToPrecision(double value) {
+        return (double) Math.round(value * (double) 10000) / (double) 10000;
+    }
+
+    private static boolean isInteger(double value) {
+        return Math.abs(value - Math.round(value)) < 1e-6;
+    }
+
+    public int getArrivalCount() {
+        return arrivalCount;
+    }
+
+    public int getArrivalReceiver(int arrival) {
+        return arrivalReceiver[arrival];
+    }
+
+    /**
+     * Returns the delay of an arrival in samples, from the total distance the ray traveled to
+     * reach the receiver sphere, rounded to the nearest whole sample.
+     *
+     * @param arrival The index of the arrival in the batch.
+     * @return the delay in samples.
+     */
+    public int getArrivalDelaySamples(int arrival) {
+        return arrivalDelay[arrival];
+    }
+
+    /**
+     * Returns the x component of the direction a ray was travelling in when it arrived, which
+     * points away from where the sound came from.
+     *
+     * @param arrival The index of the arrival in the batch.
+     * @return the x component of the unit direction.
+     */
+    public double getArrivalDirectionX(int arrival) {
+        return arrivalDirectionX[arrival];
+    }
+
+    public double getArrivalDirectionY(int arrival) {
+        return arrivalDirectionY[arrival];
+    }
+
+    public double getArrivalDirectionZ(int arrival) {
+        return arrivalDirectionZ[arrival];
+    }
+
+    /**
+     * Returns the energy array of the arrivals. The bands of an arrival start at
+     * {@link #getArrivalEnergyOffset(int)}.
+     *
+     * @return the backing energy array; callers must not modify it.
+     */
+    public double[] getArrivalEnergy() {
+        return arrivalEnergy;
+    }
+
+    public int getArrivalEnergyOffset(int arrival) {
+        return arrival * stride;
+    }
+
+    /**
+     * Returns the number of reflections of all rays in the last {@link #trace(TraceContext)}.
+     */
+    public long getBounceCount() {
+        return bounceCount;
+    }
+
+    /**
+     * Returns how many rays of the last trace stopped for a reason.
+     *
+     * @param reason One of the {@code END_*} constants.
+     * @return the number of rays.
+     */
+    public int getTerminationCount(int reason) {
+        return terminations[reason];
+    }
+
+    /**
+     * Returns how many rays of the last trace fall into a bucket of the bounce histogram. Bucket 0
+     * holds rays that never reflected, bucket {@code b} rays with {@code 2^(b-1)} to {@code 2^b - 1}
+     * reflections, and the last bucket everything above.
+     *
+     * @param bucket The bucket index, below {@link #BOUNCE_HISTOGRAM_BUCKETS}.
+     * @return the number of rays.
+     */
+    public int getBounceHistogramCount(int bucket) {
+        return bounceHistogram[bucket];
+    }
+
+    public static String getTerminationName(int reason) {
+        return TERMINATION_NAMES[reason];
+    }
+
+    /**
+     * Returns the range of bounces a bucket of the bounce histogram covers, such as {@code "4-7"}.
+     *
+     * @param bucket The bucket index.
+     * @return the label.
+     */
+    public static String getBounceHistogramLabel(int bucket) {
+        if (bucket <= 1) {
+            return Integer.toString(bucket);
+        }
+        int low = 1 << (bucket - 1);
+        return bucket == BOUNCE_HISTOGRAM_BUCKETS - 1 ? low + "+" : low + "-" + ((low << 1) - 1);
+    }
+}
@@ -0,0 +1,41 @@
+package net.fg83.rdrgen.trace;
+
+/**
+ * Plain loop implementation of {@link EnergyKernel}. Runs are not padded.
+ */
+final class ScalarEnergyKernel extends EnergyKernel {
+
+    ScalarEnergyKernel(int bands) {
+        super(bands, bands);
+    }
+
+    @Override
+    public void multiply(double[] energy, int offset, double[] factors, int factorOffset) {
+        for (int b = 0; b < bands; b++) {
+            energy[offset + b] *= factors[factorOffset + b];
+        }
+    }
+
+    @Override
+    public void attenuate(double[] energy, int offset, double[] logFactors, double distance) {
+        for (int b = 0; b < bands; b++) {
+            energy[offset + b] *= Math.exp(logFactors[b] * distance);
+        }
+    }
+
+    @Override
+    public void scale(double[] energy, int offset, double factor) {
+        for (int b = 0; b < bands; b++) {
+            energy[offset + b] *= factor;
+        }
+    }
+
+    @Override
+    public double max(double[] energy, int offset) {
+        double max = 0;
+        for (int b = 0; b < bands; b++) {
+            max = Math.max(max, energy[offset + b]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,176 @@
+package net.fg83.rdrgen.trace;
+
+import net.fg83.rdrgen.volume.AcousticVolume;
+
+/**
+ * Everything a {@link RayBatch} needs to trace rays, resolved once per simulation so that the
+ * bounce loop only reads primitive fields and arrays.
+ *
+ * Rays start at a single source and are tested against any number of receiver spheres, so one set
+ * of rays produces an echogram for every listener position at once.
+ */
+public class TraceContext {
+    private final AcousticVolume volume;
+    private final double sourceX;
+    private final double sourceY;
+    private final double sourceZ;
+    private final double[] receiverPositions;
+    private final int[] receiverGridIndices;
+    private final double receiverRadius;
+    private final boolean absorbingReceiver;
+    private final double[] materialAttenuation;
+    private final double[] materialScattering;
+    private final double[] logAirAttenuation;
+    private final double maxDistance;
+    private final int imageSourceOrder;
+    private final double imageSourceRadius;
+    private final double maxDelaySamples;
+    private final double rouletteThreshold;
+
+    /**
+     * @param volume             The captured volume rays are traced against.
+     * @param sourceX            Source x position, where rays start.
+     * @param sourceY            Source y position.
+     * @param sourceZ            Source z position.
+     * @param receiverPositions  The centres of the receiver spheres as consecutive x, y, z triples.
+     * @param receiverGridIndices Per receiver, its index in the configured receiver grid.
+     * @param receiverRadius     Radius of the receiver spheres rays must enter to be heard.
+     * @param absorbingReceiver  Whether rays end at the first receiver they enter, as they do for a
+     *                           lone receiver. Receivers of a grid let rays pass through.
+     * @param materialAttenuation The flat per-band energy factors {@code (1 - coef)} of every
+     *                           material, as provided by {@code MaterialTable.getAttenuation()}.
+     * @param materialScattering The flat per-band scattering coefficients of every material, as provided
+     *                           by {@code MaterialTable.getScattering()}.
+     * @param logAirAttenuation  Per band, the natural logarithm of the energy factor {@code (1 - coef)}
+     *                           of air for one block, see {@link BandSet#toLogAttenuation}.
+     * @param maxDistance        The maximum distance a single cast may travel.
+     * @param imageSourceOrder   The highest reflection order computed by the image-source stage, or 0 if it is disabled.
+     * @param imageSourceRadius  The distance from the receiver along each axis that image-source reflections lie within.
+     * @param maxDelaySamples    The longest delay in samples at which a ray may still arrive.
+     * @param rouletteThreshold  The energy below which rays are terminated by Russian roulette, or 0 to disable it.
+     */
+    public TraceContext(AcousticVolume volume, double sourceX, double sourceY, double sourceZ, double[] receiverPositions, int[] receiverGridIndices, double receiverRadius, boolean absorbingReceiver, double[] materialAttenuation, double[] materialScattering, double[] logAirAttenuation, double maxDistance, int imageSourceOrder, double imageSourceRadius, double maxDelaySamples, double rouletteThreshold) {
+        this.volume = volume;
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        this.sourceZ = sourceZ;
+        this.receiverPositions = receiverPositions;
+        this.receiverGridIndices = receiverGridIndices;
+        this.receiverRadius = receiverRadius;
+        this.absorbingReceiver = absorbingReceiver;
+        this.materialAttenuation = materialAttenuation;
+        this.materialScattering = materialScattering;
+        this.logAirAttenuation = logAirAttenuation;
+        this.maxDistance = maxDistance;
+        this.imageSourceOrder = imageSourceOrder;
+        this.imageSourceRadius = imageSourceRadius;
+        this.maxDelaySamples = maxDelaySamples;
+        this.rouletteThreshold = rouletteThreshold;
+    }
+
+    public AcousticVolume getVolume() {
+        return volume;
+    }
+
+    public double getSourceX() {
+        return sourceX;
+    }
+
+    public double getSourceY() {
+        return sourceY;
+    }
+
+    public double getSourceZ() {
+        return sourceZ;
+    }
+
+    public int getReceiverCount() {
+        return receiverPositions.length / 3;
+    }
+
+    /**
+     * Returns the receiver centres as consecutive x, y, z triples; receiver {@code r} starts at
+     * index {@code 3 * r}.
+     *
+     * @return the backing array; callers must not modify it.
+     */
+    public double[] getReceiverPositions() {
+        return receiverPositions;
+    }
+
+    /**
+     * Returns the index of a receiver in the configured receiver grid. Receivers inside blocks are
+     * left out of the context, so this can differ from its index here.
+     *
+     * @param receiver The receiver index in this context.
+     * @return the grid index.
+     */
+    public int getReceiverGridIndex(int receiver) {
+        return receiverGridIndices[receiver];
+    }
+
+    public double getReceiverRadius() {
+        return receiverRadius;
+    }
+
+    /**
+     * Returns whether rays end at the first receiver they enter. Only a lone configured receiver
+     * absorbs rays, however many receivers of a grid are left.
+     */
+    public boolean isAbsorbingReceiver() {
+        return absorbingReceiver;
+    }
+
+    public double[] getMaterialAttenuation() {
+        return materialAttenuation;
+    }
+
+    /**
+     * Returns the share of reflected energy every material scatters diffusely, per band. Rays
+     * deposit the scattered energy of each bounce straight at the receivers, see {@link RayBatch}.
+     *
+     * @return the backing array; callers must not modify it.
+     */
+    public double[] getMaterialScattering() {
+        return materialScattering;
+    }
+
+    public double[] getLogAirAttenuation() {
+        return logAirAttenuation;
+    }
+
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Returns the highest reflection order handled by the image-source stage. When it is enabled,
+     * rays that reach a receiver directly or after at most this many reflections, all within
+     * {@link #getImageSourceRadius()} of the source, are not counted, as the image-source stage
+     * already accounts for their path.
+     *
+     * @return the order, or 0 if every reflection is left to rays.
+     */
+    public int getImageSourceOrder() {
+        return imageSourceOrder;
+    }
+
+    public double getImageSourceRadius() {
+        return imageSourceRadius;
+    }
+
+    public double getMaxDelaySamples() {
+        return maxDelaySamples;
+    }
+
+    /**
+     * Returns the energy below which a ray's survival is decided by Russian roulette. A ray whose
+     * strongest band falls below the threshold survives with probability {@code energy / threshold}
+     * and has all of its bands divided by that probability, so the expected energy is unchanged.
+     *
+     * @return the threshold, or 0 if rays are only stopped once they fully dissipate.
+     */
+    public double getRouletteThreshold() {
+        return rouletteThreshold;
+    }
+}
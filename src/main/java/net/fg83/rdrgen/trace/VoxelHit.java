@@ -0,0 +1,50 @@
+package net.fg83.rdrgen.trace;
+
+/**
+ * Mutable result of a {@link VoxelTraversal} cast. A single instance is meant to be reused
+ * for every bounce of a ray, so casting does not allocate.
+ *
+ * Face values follow the ordinal order of Minecraft's {@code Direction} enum
+ * (down, up, north, south, west, east) and name the side of the hit voxel that was struck.
+ */
+public final class VoxelHit {
+    public static final int FACE_DOWN = 0;
+    public static final int FACE_UP = 1;
+    public static final int FACE_NORTH = 2;
+    public static final int FACE_SOUTH = 3;
+    public static final int FACE_WEST = 4;
+    public static final int FACE_EAST = 5;
+
+    // Hit voxel
+    public int blockX;
+    public int blockY;
+    public int blockZ;
+    public int material;
+
+    // Struck face of the hit voxel
+    public int face;
+
+    // Exact intersection point and distance from the cast origin
+    public double x;
+    public double y;
+    public double z;
+    public double distance;
+
+    /**
+     * Returns the x component of the outward unit normal of a face.
+     *
+     * @param face one of the {@code FACE_*} constants.
+     * @return -1, 0 or 1.
+     */
+    public static int normalX(int face) {
+        return face == FACE_WEST ? -1 : face == FACE_EAST ? 1 : 0;
+    }
+
+    public static int normalY(int face) {
+        return face == FACE_DOWN ? -1 : face == FACE_UP ? 1 : 0;
+    }
+
+    public static int normalZ(int face) {
+        return face == FACE_NORTH ? -1 : face == FACE_SOUTH ? 1 : 0;
+    }
+}
@@ -0,0 +1,296 @@
+package net.fg83.rdrgen.trace;
+
+import net.fg83.rdrgen.volume.AcousticVolume;
+import net.fg83.rdrgen.volume.VoxelSection;
+
+/**
+ * Amanatides–Woo voxel traversal over an {@link AcousticVolume}.
+ *
+ * Every non-empty voxel is treated as a full cube, so the walk only needs the material of each
+ * visited cell. This replaces building a {@code RaycastContext} and going through
+ * Minecraft's block shape pipeline for every bounce.
+ *
+ * Empty space is skipped hierarchically: when the current cell lies in an empty brick or section,
+ * see {@link AcousticVolume#getEmptyRegionSize(int, int, int)}, the walk jumps straight to the
+ * cell where the ray leaves it. Open air costs a step per 4 or 16 blocks instead of one per block,
+ * so the cost of a cast follows the surfaces near the ray rather than the distance it travels.
+ * Rising rays that pass above every column of the volume's height map are recognised as escaped
+ * before any voxel is visited.
+ */
+public class VoxelTraversal {
+
+    /**
+     * Walks the voxels along a ray until it enters a non-empty voxel, leaves the volume, or
+     * exceeds the maximum distance. A ray starting on the surface it just reflected from moves
+     * away from it. If the ray instead starts on the boundary of a non-empty voxel it is moving
+     * into, as happens after reflecting into a concave corner, that voxel is reported as hit at
+     * distance zero. A ray starting strictly inside a non-empty voxel leaves it unreported.
+     *
+     * @param volume      The captured volume to walk.
+     * @param ox          Origin x.
+     * @param oy          Origin y.
+     * @param oz          Origin z.
+     * @param dx          Direction x. The direction must be normalized.
+     * @param dy          Direction y.
+     * @param dz          Direction z.
+     * @param maxDistance The maximum distance to walk.
+     * @param hit         Receives the hit voxel, face, point and distance when a voxel is hit. On a
+     *                    miss only the distance is set: {@code maxDistance} when the walk stopped
+     *                    at the maximum distance, or positive infinity when the ray left the volume.
+     * @return true if a non-empty voxel was hit, false otherwise.
+     */
+    public static boolean cast(AcousticVolume volume, double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance, VoxelHit hit) {
+        int x = startCell(ox, dx);
+        int y = startCell(oy, dy);
+        int z = startCell(oz, dz);
+
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+
+        double tDeltaX = stepX != 0 ? Math.abs(1.0 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = stepY != 0 ? Math.abs(1.0 / dy) : Double.POSITIVE_INFINITY;
+        double tDeltaZ = stepZ != 0 ? Math.abs(1.0 / dz) : Double.POSITIVE_INFINITY;
+
+        double tMaxX = stepX > 0 ? (x + 1 - ox) / dx : stepX < 0 ? (x - ox) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = stepY > 0 ? (y + 1 - oy) / dy : stepY < 0 ? (y - oy) / dy : Double.POSITIVE_INFINITY;
+        double tMaxZ = stepZ > 0 ? (z + 1 - oz) / dz : stepZ < 0 ? (z - oz) / dz : Double.POSITIVE_INFINITY;
+
+        int startMaterial = volume.getMaterial(x, y, z);
+        if (startMaterial != AcousticVolume.EMPTY) {
+            int face = entryFace(ox, oy, oz, dx, dy, dz);
+            if (face != -1) {
+                hit.blockX = x;
+                hit.blockY = y;
+                hit.blockZ = z;
+                hit.material = startMaterial;
+                hit.face = face;
+                hit.distance = 0;
+                hit.x = ox;
+                hit.y = oy;
+                hit.z = oz;
+                return true;
+            }
+        }
+
+        if (dy > 0 && clearsTerrain(volume, ox, oy, oz, dx, dy, dz)) {
+            hit.distance = Double.POSITIVE_INFINITY;
+            return false;
+        }
+        int top = volume.getTop();
+
+        int minX = volume.getMinX();
+        int minY = volume.getMinY();
+        int minZ = volume.getMinZ();
+        int maxX = volume.getMaxX();
+        int maxY = volume.getMaxY();
+        int maxZ = volume.getMaxZ();
+
+        int region = startMaterial != AcousticVolume.EMPTY ? 1 : volume.getEmptyRegionSize(x, y, z);
+        while (true) {
+            double t;
+            int face;
+            if (region > 1) {
+                // The cell lies in an empty aligned cube; leave the whole cube in one step
+                int cubeX = x & -region;
+                int cubeY = y & -region;
+                int cubeZ = z & -region;
+                double exitX = stepX > 0 ? (cubeX + region - ox) / dx : stepX < 0 ? (cubeX - ox) / dx : Double.POSITIVE_INFINITY;
+                double exitY = stepY > 0 ? (cubeY + region - oy) / dy : stepY < 0 ? (cubeY - oy) / dy : Double.POSITIVE_INFINITY;
+                double exitZ = stepZ > 0 ? (cubeZ + region - oz) / dz : stepZ < 0 ? (cubeZ - oz) / dz : Double.POSITIVE_INFINITY;
+                if (exitX < exitY && exitX < exitZ) {
+                    t = exitX;
+                    x = stepX > 0 ? cubeX + region : cubeX - 1;
+                    y = cellInCube(oy + dy * t, cubeY, region);
+                    z = cellInCube(oz + dz * t, cubeZ, region);
+                    face = stepX > 0 ? VoxelHit.FACE_WEST : VoxelHit.FACE_EAST;
+                }
+                else if (exitY < exitZ) {
+                    t = exitY;
+                    x = cellInCube(ox + dx * t, cubeX, region);
+                    y = stepY > 0 ? cubeY + region : cubeY - 1;
+                    z = cellInCube(oz + dz * t, cubeZ, region);
+                    face = stepY > 0 ? VoxelHit.FACE_DOWN : VoxelHit.FACE_UP;
+                }
+                else {
+                    t = exitZ;
+                    x = cellInCube(ox + dx * t, cubeX, region);
+                    y = cellInCube(oy + dy * t, cubeY, region);
+                    z = stepZ > 0 ? cubeZ + region : cubeZ - 1;
+                    face = stepZ > 0 ? VoxelHit.FACE_NORTH : VoxelHit.FACE_SOUTH;
+                }
+                tMaxX = stepX > 0 ? (x + 1 - ox) / dx : stepX < 0 ? (x - ox) / dx : Double.POSITIVE_INFINITY;
+                tMaxY = stepY > 0 ? (y + 1 - oy) / dy : stepY < 0 ? (y - oy) / dy : Double.POSITIVE_INFINITY;
+                tMaxZ = stepZ > 0 ? (z + 1 - oz) / dz : stepZ < 0 ? (z - oz) / dz : Double.POSITIVE_INFINITY;
+            }
+            else if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                t = tMaxX;
+                x += stepX;
+                tMaxX += tDeltaX;
+                face = stepX > 0 ? VoxelHit.FACE_WEST : VoxelHit.FACE_EAST;
+            }
+            else if (tMaxY < tMaxZ) {
+                t = tMaxY;
+                y += stepY;
+                tMaxY += tDeltaY;
+                face = stepY > 0 ? VoxelHit.FACE_DOWN : VoxelHit.FACE_UP;
+            }
+            else {
+                t = tMaxZ;
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+                face = stepZ > 0 ? VoxelHit.FACE_NORTH : VoxelHit.FACE_SOUTH;
+            }
+
+            if (t > maxDistance) {
+                hit.distance = maxDistance;
+                return false;
+            }
+            // Once outside the volume on a side the ray is moving away from, nothing else can be hit
+            if ((x < minX && stepX <= 0) || (x >= maxX && stepX >= 0)
+                    || (y < minY && stepY <= 0) || (y >= maxY && stepY >= 0)
+                    || (z < minZ && stepZ <= 0) || (z >= maxZ && stepZ >= 0)) {
+                hit.distance = Double.POSITIVE_INFINITY;
+                return false;
+            }
+            // A rising ray above the highest block of the volume has escaped
+            if (stepY > 0 && y >= top) {
+                hit.distance = Double.POSITIVE_INFINITY;
+                return false;
+            }
+
+            region = volume.getEmptyRegionSize(x, y, z);
+            if (region == 0) {
+                hit.blockX = x;
+                hit.blockY = y;
+                hit.blockZ = z;
+                hit.material = volume.getMaterial(x, y, z);
+                hit.face = face;
+                hit.distance = t;
+                hit.x = ox + dx * t;
+                hit.y = oy + dy * t;
+                hit.z = oz + dz * t;
+                // Snap the coordinate on the struck plane to avoid drift from the multiplication
+                switch (face) {
+                    case VoxelHit.FACE_WEST -> hit.x = x;
+                    case VoxelHit.FACE_EAST -> hit.x = x + 1;
+                    case VoxelHit.FACE_DOWN -> hit.y = y;
+                    case VoxelHit.FACE_UP -> hit.y = y + 1;
+                    case VoxelHit.FACE_NORTH -> hit.z = z;
+                    default -> hit.z = z + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a rising ray passes above every column it will cross, using the height map of
+     * the volume. The columns under the ray are walked in two dimensions, skipping a whole section
+     * column at once when the ray enters it above its highest block. As the ray only rises, it is
+     * lowest where it enters a column, so comparing that height with the column top is exact.
+     *
+     * @return true if the ray cannot hit anything, false if it may.
+     */
+    private static boolean clearsTerrain(AcousticVolume volume, double ox, double oy, double oz, double dx, double dy, double dz) {
+        int top = volume.getTop();
+        int minX = volume.getMinX();
+        int minZ = volume.getMinZ();
+        int maxX = volume.getMaxX();
+        int maxZ = volume.getMaxZ();
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+        int x = startCell(ox, dx);
+        int z = startCell(oz, dz);
+        double t = 0;
+
+        while (true) {
+            double y = oy + dy * t;
+            if (y >= top) {
+                return true;
+            }
+            if ((x < minX && stepX <= 0) || (x >= maxX && stepX >= 0)
+                    || (z < minZ && stepZ <= 0) || (z >= maxZ && stepZ >= 0)) {
+                return true;
+            }
+            int size;
+            if (y >= volume.getSectionColumnTop(x, z)) {
+                size = VoxelSection.SIZE;
+            }
+            else if (y >= volume.getColumnTop(x, z)) {
+                size = 1;
+            }
+            else {
+                return false;
+            }
+            if (stepX == 0 && stepZ == 0) {
+                return true;
+            }
+
+            // Move to the next column past the clear square
+            int squareX = x & -size;
+            int squareZ = z & -size;
+            double exitX = stepX > 0 ? (squareX + size - ox) / dx : stepX < 0 ? (squareX - ox) / dx : Double.POSITIVE_INFINITY;
+            double exitZ = stepZ > 0 ? (squareZ + size - oz) / dz : stepZ < 0 ? (squareZ - oz) / dz : Double.POSITIVE_INFINITY;
+            if (exitX < exitZ) {
+                t = exitX;
+                x = stepX > 0 ? squareX + size : squareX - 1;
+                z = cellInCube(oz + dz * t, squareZ, size);
+            }
+            else {
+                t = exitZ;
+                x = cellInCube(ox + dx * t, squareX, size);
+                z = stepZ > 0 ? squareZ + size : squareZ - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the cell of a coordinate on a face of an aligned cube, kept inside the cube so that
+     * rounding at the exit point cannot skip a cell the cube did not cover.
+     */
+    private static int cellInCube(double coordinate, int cubeMin, int size) {
+        int cell = (int) Math.floor(coordinate);
+        return Math.max(cubeMin, Math.min(cubeMin + size - 1, cell));
+    }
+
+    /**
+     * Finds the face through which a ray starting on a cell boundary enters its start cell.
+     * When the origin lies on several boundaries, the axis the ray moves along fastest wins.
+     *
+     * @return one of the {@code VoxelHit.FACE_*} constants, or -1 if the origin is not on a
+     *         boundary the ray is crossing.
+     */
+    private static int entryFace(double ox, double oy, double oz, double dx, double dy, double dz) {
+        int face = -1;
+        double best = 0;
+        if (dx != 0 && ox == Math.floor(ox) && Math.abs(dx) > best) {
+            best = Math.abs(dx);
+            face = dx > 0 ? VoxelHit.FACE_WEST : VoxelHit.FACE_EAST;
+        }
+        if (dy != 0 && oy == Math.floor(oy) && Math.abs(dy) > best) {
+            best = Math.abs(dy);
+            face = dy > 0 ? VoxelHit.FACE_DOWN : VoxelHit.FACE_UP;
+        }
+        if (dz != 0 && oz == Math.floor(oz) && Math.abs(dz) > best) {
+            face = dz > 0 ? VoxelHit.FACE_NORTH : VoxelHit.FACE_SOUTH;
+        }
+        return face;
+    }
+
+    /**
+     * Determines the cell containing an origin coordinate. A coordinate lying exactly on a cell
+     * boundary belongs to the cell the ray is moving into.
+     *
+     * @param origin    The origin coordinate.
+     * @param direction The direction component along the same axis.
+     * @return The integer cell coordinate.
+     */
+    private static int startCell(double origin, double direction) {
+        int cell = (int) Math.floor(origin);
+        if (direction < 0 && cell == origin) {
+            cell--;
+        }
+        return cell;
+    }
+}
@@ -0,0 +1,356 @@
+package net.fg83.rdrgen.volume;
+
+import net.fg83.rdrgen.material.MaterialTable;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, palette-compressed copy of the blocks surrounding a receiver.
+ *
+ * The volume is a box of 16x16x16 {@link VoxelSection}s. Every voxel stores the
+ * {@link MaterialTable} index of its block, resolved once while capturing. Material
+ * {@link #EMPTY} marks acoustically empty voxels (air, fluids and blocks without an outline
+ * shape). Sections that held nothing but empty voxels are not stored.
+ *
+ * For empty-space skipping, {@link #getEmptyRegionSize(int, int, int)} reports how large an
+ * empty cube around a voxel is, from the occupancy bits and brick summaries of the sections.
+ *
+ * A height map of the captured blocks is derived when the volume is built. Unlike Minecraft's
+ * {@code MOTION_BLOCKING} height map it counts every non-empty voxel, including blocks without
+ * collision, so it is exact for the traced geometry.
+ *
+ * Because the volume never changes after it is built, ray-tracing workers can read it
+ * concurrently without locks while the client thread keeps mutating the live world.
+ * Coordinates outside the captured box read as empty, which matches how the client
+ * world reports unloaded chunks.
+ */
+public final class AcousticVolume {
+    public static final int EMPTY = MaterialTable.EMPTY;
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sectionsX;
+    private final int sectionsY;
+    private final int sectionsZ;
+    private final VoxelSection[] sections;
+
+    // Height map: one above the highest non-empty voxel of every column, per column and per section column
+    private final int[] columnTops;
+    private final int[] sectionColumnTops;
+    private final int top;
+
+    /**
+     * @param columnTops The height map of the sections if it is already known, such as from a
+     *                   {@link CaptureFile}, or {@code null} to derive it from the sections.
+     */
+    private AcousticVolume(int minSectionX, int minSectionY, int minSectionZ, int sectionsX, int sectionsY, int sectionsZ, VoxelSection[] sections, int[] columnTops) {
+        this.minX = minSectionX * VoxelSection.SIZE;
+        this.minY = minSectionY * VoxelSection.SIZE;
+        this.minZ = minSectionZ * VoxelSection.SIZE;
+        this.sectionsX = sectionsX;
+        this.sectionsY = sectionsY;
+        this.sectionsZ = sectionsZ;
+        this.sections = sections;
+
+        this.sectionColumnTops = new int[sectionsX * sectionsZ];
+        Arrays.fill(sectionColumnTops, minY);
+        if (columnTops == null) {
+            this.columnTops = new int[sectionsX * sectionsZ * VoxelSection.SIZE * VoxelSection.SIZE];
+            Arrays.fill(this.columnTops, minY);
+        }
+        else {
+            this.columnTops = columnTops;
+        }
+        int highest = minY;
+        for (int sx = 0; sx < sectionsX; sx++) {
+            for (int sz = 0; sz < sectionsZ; sz++) {
+                int sectionColumnTop = columnTops == null ? computeColumnTops(sx, sz) : getHighestColumnTop(sx, sz);
+                sectionColumnTops[sz * sectionsX + sx] = sectionColumnTop;
+                highest = Math.max(highest, sectionColumnTop);
+            }
+        }
+        this.top = highest;
+    }
+
+    private int getHighestColumnTop(int sx, int sz) {
+        int highest = minY;
+        for (int z = 0; z < VoxelSection.SIZE; z++) {
+            for (int x = 0; x < VoxelSection.SIZE; x++) {
+                highest = Math.max(highest, columnTops[columnIndex(sx * VoxelSection.SIZE + x, sz * VoxelSection.SIZE + z)]);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Fills in the column tops of one section column by scanning each column down from the highest
+     * stored section until its first non-empty voxel.
+     *
+     * @return the highest column top of the section column.
+     */
+    private int computeColumnTops(int sx, int sz) {
+        int remaining = VoxelSection.SIZE * VoxelSection.SIZE;
+        int highest = minY;
+        for (int sy = sectionsY - 1; sy >= 0 && remaining > 0; sy--) {
+            VoxelSection section = sections[sectionIndex(sx, sy, sz)];
+            if (section == null || section.isEmpty()) {
+                continue;
+            }
+            for (int z = 0; z < VoxelSection.SIZE; z++) {
+                for (int x = 0; x < VoxelSection.SIZE; x++) {
+                    int column = columnIndex(sx * VoxelSection.SIZE + x, sz * VoxelSection.SIZE + z);
+                    if (columnTops[column] != minY) {
+                        continue;
+                    }
+                    for (int y = VoxelSection.SIZE - 1; y >= 0; y--) {
+                        if (section.isOccupied(x, y, z)) {
+                            columnTops[column] = minY + sy * VoxelSection.SIZE + y + 1;
+                            highest = Math.max(highest, columnTops[column]);
+                            remaining--;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return highest;
+    }
+
+    private int columnIndex(int lx, int lz) {
+        return lz * sectionsX * VoxelSection.SIZE + lx;
+    }
+
+    /**
+     * Reads the material of the voxel at the given block coordinates.
+     *
+     * @param x block x coordinate.
+     * @param y block y coordinate.
+     * @param z block z coordinate.
+     * @return the material index of the voxel, or {@link #EMPTY} if it lies outside the volume.
+     */
+    public int getMaterial(int x, int y, int z) {
+        int lx = x - minX;
+        int ly = y - minY;
+        int lz = z - minZ;
+        if (lx < 0 || ly < 0 || lz < 0) {
+            return EMPTY;
+        }
+        int sx = lx >> 4;
+        int sy = ly >> 4;
+        int sz = lz >> 4;
+        if (sx >= sectionsX || sy >= sectionsY || sz >= sectionsZ) {
+            return EMPTY;
+        }
+        VoxelSection section = sections[sectionIndex(sx, sy, sz)];
+        if (section == null) {
+            return EMPTY;
+        }
+        return section.get(VoxelSection.index(lx & 15, ly & 15, lz & 15));
+    }
+
+    public boolean isEmpty(int x, int y, int z) {
+        return getMaterial(x, y, z) == EMPTY;
+    }
+
+    /**
+     * Returns the edge length of the largest empty, aligned cube around a voxel that a ray can
+     * cross in one step: a whole section when the section is missing or lies outside the volume,
+     * a 4x4x4 brick, or the voxel itself. Regions are aligned to multiples of their size in block
+     * coordinates, so the region of a voxel starts at {@code x & -size}.
+     *
+     * @param x block x coordinate.
+     * @param y block y coordinate.
+     * @param z block z coordinate.
+     * @return 16, 4 or 1 for an empty voxel, or 0 if the voxel is not empty.
+     */
+    public int getEmptyRegionSize(int x, int y, int z) {
+        int lx = x - minX;
+        int ly = y - minY;
+        int lz = z - minZ;
+        if (lx < 0 || ly < 0 || lz < 0) {
+            return VoxelSection.SIZE;
+        }
+        int sx = lx >> 4;
+        int sy = ly >> 4;
+        int sz = lz >> 4;
+        if (sx >= sectionsX || sy >= sectionsY || sz >= sectionsZ) {
+            return VoxelSection.SIZE;
+        }
+        VoxelSection section = sections[sectionIndex(sx, sy, sz)];
+        if (section == null) {
+            return VoxelSection.SIZE;
+        }
+        return section.getEmptyRegionSize(lx & 15, ly & 15, lz & 15);
+    }
+
+    /**
+     * Returns the height of a column: one above its highest non-empty voxel, so every voxel at or
+     * above the returned y is empty.
+     *
+     * @param x block x coordinate.
+     * @param z block z coordinate.
+     * @return the column top, or {@link #getMinY()} for an empty column or one outside the volume.
+     */
+    public int getColumnTop(int x, int z) {
+        int lx = x - minX;
+        int lz = z - minZ;
+        if (lx < 0 || lz < 0 || lx >= sectionsX * VoxelSection.SIZE || lz >= sectionsZ * VoxelSection.SIZE) {
+            return minY;
+        }
+        return columnTops[columnIndex(lx, lz)];
+    }
+
+    /**
+     * Returns the highest column top of the 16x16 section column containing a column.
+     *
+     * @param x block x coordinate.
+     * @param z block z coordinate.
+     * @return the section column top, or {@link #getMinY()} outside the volume.
+     */
+    public int getSectionColumnTop(int x, int z) {
+        int lx = x - minX;
+        int lz = z - minZ;
+        if (lx < 0 || lz < 0 || lx >= sectionsX * VoxelSection.SIZE || lz >= sectionsZ * VoxelSection.SIZE) {
+            return minY;
+        }
+        return sectionColumnTops[(lz >> 4) * sectionsX + (lx >> 4)];
+    }
+
+    /**
+     * Returns one above the highest non-empty voxel of the whole volume.
+     */
+    public int getTop() {
+        return top;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return minX + sectionsX * VoxelSection.SIZE;
+    }
+
+    public int getMaxY() {
+        return minY + sectionsY * VoxelSection.SIZE;
+    }
+
+    public int getMaxZ() {
+        return minZ + sectionsZ * VoxelSection.SIZE;
+    }
+
+    int getSectionsX() {
+        return sectionsX;
+    }
+
+    int getSectionsY() {
+        return sectionsY;
+    }
+
+    int getSectionsZ() {
+        return sectionsZ;
+    }
+
+    /**
+     * Returns the height map of the volume, one column top per column along x first, then z. The
+     * array is shared and must not be modified.
+     */
+    int[] getColumnTops() {
+        return columnTops;
+    }
+
+    /**
+     * Returns a stored section by its offset from the lowest corner.
+     *
+     * @return the section, or {@code null} if it held nothing but empty voxels.
+     */
+    VoxelSection getSection(int sx, int sy, int sz) {
+        return sections[sectionIndex(sx, sy, sz)];
+    }
+
+    private int sectionIndex(int sx, int sy, int sz) {
+        return (sy * sectionsZ + sz) * sectionsX + sx;
+    }
+
+    /**
+     * Collects sections into a new {@link AcousticVolume}. The builder is used from a single
+     * thread while capturing and is discarded once {@link #build()} has been called.
+     */
+    public static final class Builder {
+        private final int minSectionX;
+        private final int minSectionY;
+        private final int minSectionZ;
+        private final int sectionsX;
+        private final int sectionsY;
+        private final int sectionsZ;
+        private final VoxelSection[] sections;
+
+        /**
+         * @param minSectionX  section x coordinate of the lowest corner.
+         * @param minSectionY  section y coordinate of the lowest corner.
+         * @param minSectionZ  section z coordinate of the lowest corner.
+         * @param sectionsX    number of sections along x.
+         * @param sectionsY    number of sections along y.
+         * @param sectionsZ    number of sections along z.
+         */
+        public Builder(int minSectionX, int minSectionY, int minSectionZ, int sectionsX, int sectionsY, int sectionsZ) {
+            this.minSectionX = minSectionX;
+            this.minSectionY = minSectionY;
+            this.minSectionZ = minSectionZ;
+            this.sectionsX = sectionsX;
+            this.sectionsY = sectionsY;
+            this.sectionsZ = sectionsZ;
+            this.sections = new VoxelSection[sectionsX * sectionsY * sectionsZ];
+        }
+
+        /**
+         * Stores a section of the volume.
+         *
+         * @param sx     section x offset from the lowest corner.
+         * @param sy     section y offset from the lowest corner.
+         * @param sz     section z offset from the lowest corner.
+         * @param values 4096 material indices in {@link VoxelSection#index(int, int, int)} order.
+         */
+        public void putSection(int sx, int sy, int sz, int[] values) {
+            sections[(sy * sectionsZ + sz) * sectionsX + sx] = VoxelSection.pack(values);
+        }
+
+        int getSectionsX() {
+            return sectionsX;
+        }
+
+        int getSectionsY() {
+            return sectionsY;
+        }
+
+        int getSectionsZ() {
+            return sectionsZ;
+        }
+
+        void putSection(int sx, int sy, int sz, VoxelSection section) {
+            sections[(sy * sectionsZ + sz) * sectionsX + sx] = section;
+        }
+
+        public AcousticVolume build() {
+            return new AcousticVolume(minSectionX, minSectionY, minSectionZ, sectionsX, sectionsY, sectionsZ, sections, null);
+        }
+
+        /**
+         * Builds the volume with a height map that is already known instead of deriving it.
+         *
+         * @param columnTops The column tops in the order of {@link AcousticVolume#getColumnTops()}.
+         */
+        AcousticVolume build(int[] columnTops) {
+            return new AcousticVolume(minSectionX, minSectionY, minSectionZ, sectionsX, sectionsY, sectionsZ, sections, columnTops);
+        }
+    }
+}
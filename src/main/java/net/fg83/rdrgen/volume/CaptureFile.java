@@ -0,0 +1,353 @@
+package net.fg83.rdrgen.volume;
+
+import net.fg83.rdrgen.material.MaterialTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A captured scene saved to disk: an {@link AcousticVolume} together with the source and receiver
+ * positions and the direction the receiver faced, everything needed to run a simulation again
+ * without the game.
+ *
+ * Version 2 files are laid out to be memory-mapped, uncompressed and big-endian, with every
+ * array aligned to its element size:
+ * - the magic number {@code RDRC} and the format version,
+ * - the source and receiver positions as doubles, the receiver's yaw as a float and the number
+ *   of materials,
+ * - the names of the materials by index as a length and UTF-8 bytes each, so a capture stays
+ *   valid when the material table changes; materials missing from the table on load become
+ *   {@link MaterialTable#UNKNOWN},
+ * - the volume bounds in sections, then its height map of one column top per column,
+ * - the file offset of every section in storage order, 0 for sections that are not stored,
+ * - the sections, each its palette followed by its bit-packed entries, see {@link VoxelSection}.
+ *
+ * Loading maps the file and reads every section's palette and packed entries in bulk, with no
+ * decompression or repacking, and takes the stored height map as it is. Only the occupancy bits
+ * the tracer skips empty space with are derived, while checking the entries. The tracer still
+ * works on its own heap copies, as reads from the mapping would slow down every voxel lookup.
+ *
+ * Version 1 files, a gzip-compressed stream of the same data without height map or offsets, can
+ * still be read.
+ */
+public final class CaptureFile {
+    public static final String EXTENSION = ".rdrcapture";
+
+    private static final int MAGIC = 0x52445243;
+    private static final int VERSION = 2;
+    private static final int GZIP_MAGIC = 0x1F8B;
+    // More than a capture at the highest render distance over the tallest build height holds
+    private static final long MAX_SECTIONS = 1 << 24;
+    // Magic, version, positions, yaw and the number of materials
+    private static final int HEADER_BYTES = 64;
+
+    private final AcousticVolume volume;
+    private final double sourceX;
+    private final double sourceY;
+    private final double sourceZ;
+    private final double receiverX;
+    private final double receiverY;
+    private final double receiverZ;
+    private final float receiverYaw;
+
+    public CaptureFile(AcousticVolume volume, double sourceX, double sourceY, double sourceZ, double receiverX, double receiverY, double receiverZ, float receiverYaw) {
+        this.volume = volume;
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        this.sourceZ = sourceZ;
+        this.receiverX = receiverX;
+        this.receiverY = receiverY;
+        this.receiverZ = receiverZ;
+        this.receiverYaw = receiverYaw;
+    }
+
+    /**
+     * Writes the capture to a file in the current format.
+     *
+     * @param path      The file to write.
+     * @param materials The material table the volume's material indices refer to.
+     * @throws IOException if writing fails or the capture is too large to map.
+     */
+    public void write(Path path, MaterialTable materials) throws IOException {
+        byte[][] names = new byte[materials.size()][];
+        long namesSize = 0;
+        for (int m = 0; m < names.length; m++) {
+            names[m] = materials.getName(m).getBytes(StandardCharsets.UTF_8);
+            namesSize += 2 + names[m].length;
+        }
+        int[] columnTops = volume.getColumnTops();
+        int sectionCount = volume.getSectionsX() * volume.getSectionsY() * volume.getSectionsZ();
+        long sectionsStart = align8(align8(HEADER_BYTES + namesSize) + 24 + columnTops.length * 4L) + sectionCount * 8L;
+
+        long[] offsets = new long[sectionCount];
+        long end = sectionsStart;
+        int s = 0;
+        for (int sy = 0; sy < volume.getSectionsY(); sy++) {
+            for (int sz = 0; sz < volume.getSectionsZ(); sz++) {
+                for (int sx = 0; sx < volume.getSectionsX(); sx++) {
+                    VoxelSection section = volume.getSection(sx, sy, sz);
+                    if (section != null) {
+                        offsets[s] = end;
+                        end += section.getSerializedSize();
+                    }
+                    s++;
+                }
+            }
+        }
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Capture of " + end + " bytes is too large to map");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(sourceX);
+            out.writeDouble(sourceY);
+            out.writeDouble(sourceZ);
+            out.writeDouble(receiverX);
+            out.writeDouble(receiverY);
+            out.writeDouble(receiverZ);
+            out.writeFloat(receiverYaw);
+            out.writeInt(names.length);
+            for (byte[] name : names) {
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            pad(out);
+
+            out.writeInt(volume.getMinX() >> 4);
+            out.writeInt(volume.getMinY() >> 4);
+            out.writeInt(volume.getMinZ() >> 4);
+            out.writeInt(volume.getSectionsX());
+            out.writeInt(volume.getSectionsY());
+            out.writeInt(volume.getSectionsZ());
+            for (int columnTop : columnTops) {
+                out.writeInt(columnTop);
+            }
+            pad(out);
+
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            for (int sy = 0; sy < volume.getSectionsY(); sy++) {
+                for (int sz = 0; sz < volume.getSectionsZ(); sz++) {
+                    for (int sx = 0; sx < volume.getSectionsX(); sx++) {
+                        VoxelSection section = volume.getSection(sx, sy, sz);
+                        if (section != null) {
+                            section.write(out);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a capture from a file, translating its materials to the given table by name.
+     *
+     * @param path      The file to read.
+     * @param materials The material table to resolve the stored materials against.
+     * @return the capture.
+     * @throws IOException if reading fails or the file is not a capture of a supported version.
+     */
+    public static CaptureFile read(Path path, MaterialTable materials) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be a capture file");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() >= 2 && (buffer.getShort(0) & 0xFFFF) == GZIP_MAGIC) {
+            try (InputStream in = Files.newInputStream(path)) {
+                return readVersion1(in, path, materials);
+            }
+        }
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a capture file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported capture file version " + version);
+        }
+        try {
+            return map(buffer, materials);
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IOException(path + " is truncated", e);
+        }
+    }
+
+    private static CaptureFile map(ByteBuffer buffer, MaterialTable materials) throws IOException {
+        double sourceX = buffer.getDouble(8);
+        double sourceY = buffer.getDouble(16);
+        double sourceZ = buffer.getDouble(24);
+        double receiverX = buffer.getDouble(32);
+        double receiverY = buffer.getDouble(40);
+        double receiverZ = buffer.getDouble(48);
+        float receiverYaw = buffer.getFloat(56);
+
+        String[] names = new String[buffer.getInt(60)];
+        int position = HEADER_BYTES;
+        for (int m = 0; m < names.length; m++) {
+            int length = buffer.getShort(position) & 0xFFFF;
+            byte[] name = new byte[length];
+            buffer.get(position + 2, name);
+            names[m] = new String(name, StandardCharsets.UTF_8);
+            position += 2 + length;
+        }
+        int[] remap = remapMaterials(names, materials);
+        position = (int) align8(position);
+
+        int minSectionX = buffer.getInt(position);
+        int minSectionY = buffer.getInt(position + 4);
+        int minSectionZ = buffer.getInt(position + 8);
+        AcousticVolume.Builder builder = createBuilder(minSectionX, minSectionY, minSectionZ, buffer.getInt(position + 12), buffer.getInt(position + 16), buffer.getInt(position + 20));
+        position += 24;
+
+        int minY = minSectionY * VoxelSection.SIZE;
+        int maxY = minY + builder.getSectionsY() * VoxelSection.SIZE;
+        int[] columnTops = new int[builder.getSectionsX() * builder.getSectionsZ() * VoxelSection.SIZE * VoxelSection.SIZE];
+        buffer.slice(position, columnTops.length * 4).asIntBuffer().get(columnTops);
+        for (int columnTop : columnTops) {
+            if (columnTop < minY || columnTop > maxY) {
+                throw new IOException("Invalid column top " + columnTop);
+            }
+        }
+        position = (int) align8(position + columnTops.length * 4L);
+
+        int s = 0;
+        for (int sy = 0; sy < builder.getSectionsY(); sy++) {
+            for (int sz = 0; sz < builder.getSectionsZ(); sz++) {
+                for (int sx = 0; sx < builder.getSectionsX(); sx++) {
+                    long offset = buffer.getLong(position + s * 8);
+                    if (offset != 0) {
+                        if ((offset & 7) != 0 || offset > Integer.MAX_VALUE) {
+                            throw new IOException("Invalid section offset " + offset);
+                        }
+                        builder.putSection(sx, sy, sz, VoxelSection.map(buffer, (int) offset, remap));
+                    }
+                    s++;
+                }
+            }
+        }
+        return new CaptureFile(builder.build(columnTops), sourceX, sourceY, sourceZ, receiverX, receiverY, receiverZ, receiverYaw);
+    }
+
+    private static CaptureFile readVersion1(InputStream file, Path path, MaterialTable materials) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a capture file");
+            }
+            int version = in.readInt();
+            if (version != 1) {
+                throw new IOException("Unsupported capture file version " + version);
+            }
+            double sourceX = in.readDouble();
+            double sourceY = in.readDouble();
+            double sourceZ = in.readDouble();
+            double receiverX = in.readDouble();
+            double receiverY = in.readDouble();
+            double receiverZ = in.readDouble();
+            float receiverYaw = in.readFloat();
+
+            String[] names = new String[in.readInt()];
+            for (int m = 0; m < names.length; m++) {
+                names[m] = in.readUTF();
+            }
+            int[] remap = remapMaterials(names, materials);
+
+            AcousticVolume.Builder builder = createBuilder(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            for (int sy = 0; sy < builder.getSectionsY(); sy++) {
+                for (int sz = 0; sz < builder.getSectionsZ(); sz++) {
+                    for (int sx = 0; sx < builder.getSectionsX(); sx++) {
+                        if (in.readBoolean()) {
+                            builder.putSection(sx, sy, sz, VoxelSection.read(in, remap));
+                        }
+                    }
+                }
+            }
+            return new CaptureFile(builder.build(), sourceX, sourceY, sourceZ, receiverX, receiverY, receiverZ, receiverYaw);
+        }
+    }
+
+    /**
+     * Translates the stored materials to indices of the given table by name.
+     *
+     * @return the material index of the table for every stored material index.
+     */
+    private static int[] remapMaterials(String[] names, MaterialTable materials) {
+        int[] remap = new int[names.length];
+        for (int m = 0; m < names.length; m++) {
+            int material = m == MaterialTable.EMPTY ? MaterialTable.EMPTY : materials.getMaterialIndex(names[m]);
+            if (material == -1 || (material == MaterialTable.EMPTY && m != MaterialTable.EMPTY)) {
+                if (m != MaterialTable.UNKNOWN) {
+                    System.out.println("Material '" + names[m] + "' of the capture is not in the material table, treating it as unknown.");
+                }
+                material = MaterialTable.UNKNOWN;
+            }
+            remap[m] = material;
+        }
+        return remap;
+    }
+
+    private static AcousticVolume.Builder createBuilder(int minSectionX, int minSectionY, int minSectionZ, int sectionsX, int sectionsY, int sectionsZ) throws IOException {
+        if (sectionsX < 1 || sectionsY < 1 || sectionsZ < 1 || (long) sectionsX * sectionsY * sectionsZ > MAX_SECTIONS) {
+            throw new IOException("Invalid capture bounds " + sectionsX + "x" + sectionsY + "x" + sectionsZ + " sections");
+        }
+        return new AcousticVolume.Builder(minSectionX, minSectionY, minSectionZ, sectionsX, sectionsY, sectionsZ);
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while ((out.size() & 7) != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static long align8(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    public AcousticVolume getVolume() {
+        return volume;
+    }
+
+    public double getSourceX() {
+        return sourceX;
+    }
+
+    public double getSourceY() {
+        return sourceY;
+    }
+
+    public double getSourceZ() {
+        return sourceZ;
+    }
+
+    public double getReceiverX() {
+        return receiverX;
+    }
+
+    public double getReceiverY() {
+        return receiverY;
+    }
+
+    public double getReceiverZ() {
+        return receiverZ;
+    }
+
+    public float getReceiverYaw() {
+        return receiverYaw;
+    }
+}
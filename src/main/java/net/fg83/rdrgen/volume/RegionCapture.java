@@ -0,0 +1,210 @@
+package net.fg83.rdrgen.volume;
+
+import net.fg83.rdrgen.material.BlockNameMaterials;
+import net.fg83.rdrgen.world.RegionFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Copies the chunk sections around a point of a world save into an {@link AcousticVolume}, the
+ * way {@link VolumeCapture} copies them from a loaded world, so simulations can run straight from
+ * the region files without a client.
+ *
+ * Only the region files around the point are mapped, see {@link RegionFile}, and only the chunks
+ * within the radius are decompressed, in parallel. Of each chunk only the block state palettes
+ * and data of its sections are decoded; light, biomes, entities and everything else are skipped.
+ * Palette entries are resolved to materials by block identifier, see {@link BlockNameMaterials}.
+ *
+ * Worlds must have been saved by Minecraft 1.18 or later. Chunks that were never generated or
+ * are not fully generated read as empty, like unloaded chunks in the client.
+ */
+public class RegionCapture {
+    // The first data version with the 1.18 chunk format: sections at the root, palettes in block_states
+    private static final int MIN_DATA_VERSION = 2860;
+    private static final Set<String> CHUNK_TAGS = Set.of(
+            "DataVersion", "Status",
+            "sections", "sections/Y", "sections/block_states",
+            "sections/block_states/palette", "sections/block_states/palette/Name", "sections/block_states/data"
+    );
+    private static final Predicate<String> KEEP_CHUNK_TAG = CHUNK_TAGS::contains;
+
+    /**
+     * Captures every saved chunk within a square radius of the given position, over every section
+     * height the chunks hold.
+     *
+     * @param regionDirectory The {@code region} directory of a dimension of the world save.
+     * @param centerX         The x position the volume is centred on, usually the receiver.
+     * @param centerZ         The z position the volume is centred on.
+     * @param chunkRadius     The number of chunks to include on each side of the centre chunk.
+     * @param materials       The block to material table.
+     * @return An immutable snapshot of the surrounding blocks.
+     * @throws IOException if a region file cannot be read or holds corrupt or unsupported chunks.
+     */
+    public static AcousticVolume capture(Path regionDirectory, double centerX, double centerZ, int chunkRadius, BlockNameMaterials materials) throws IOException {
+        int minChunkX = (((int) Math.floor(centerX)) >> 4) - chunkRadius;
+        int minChunkZ = (((int) Math.floor(centerZ)) >> 4) - chunkRadius;
+        int chunksAcross = chunkRadius * 2 + 1;
+
+        Map<String, RegionFile> regions = new HashMap<>();
+        try {
+            for (int cx = 0; cx < chunksAcross; cx++) {
+                for (int cz = 0; cz < chunksAcross; cz++) {
+                    String fileName = RegionFile.getFileName(minChunkX + cx, minChunkZ + cz);
+                    Path path = regionDirectory.resolve(fileName);
+                    if (!regions.containsKey(fileName) && Files.isRegularFile(path)) {
+                        regions.put(fileName, new RegionFile(path, Math.floorDiv(minChunkX + cx, RegionFile.CHUNKS), Math.floorDiv(minChunkZ + cz, RegionFile.CHUNKS)));
+                    }
+                }
+            }
+
+            ConcurrentLinkedQueue<CapturedSection> captured = new ConcurrentLinkedQueue<>();
+            try {
+                IntStream.range(0, chunksAcross * chunksAcross).parallel().forEach(chunk -> {
+                    int cx = chunk / chunksAcross;
+                    int cz = chunk % chunksAcross;
+                    RegionFile region = regions.get(RegionFile.getFileName(minChunkX + cx, minChunkZ + cz));
+                    if (region == null) {
+                        return;
+                    }
+                    try {
+                        captureChunk(region, minChunkX + cx, minChunkZ + cz, cx, cz, materials, captured);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return build(minChunkX, minChunkZ, chunksAcross, captured);
+        }
+        finally {
+            for (RegionFile region : regions.values()) {
+                region.close();
+            }
+        }
+    }
+
+    private static void captureChunk(RegionFile region, int chunkX, int chunkZ, int cx, int cz, BlockNameMaterials materials, ConcurrentLinkedQueue<CapturedSection> captured) throws IOException {
+        Map<String, Object> root = region.readChunk(chunkX, chunkZ, KEEP_CHUNK_TAG);
+        if (root == null) {
+            return;
+        }
+        if (!(root.get("DataVersion") instanceof Integer dataVersion) || dataVersion < MIN_DATA_VERSION) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " was saved before Minecraft 1.18, load and save the world in a newer version first");
+        }
+        if (!(root.get("Status") instanceof String status) || !status.endsWith("full")) {
+            return;
+        }
+        if (!(root.get("sections") instanceof List<?> sections)) {
+            return;
+        }
+
+        int[] values = new int[VoxelSection.VOLUME];
+        for (Object element : sections) {
+            if (element instanceof Map<?, ?> section
+                    && section.get("Y") instanceof Byte sectionY
+                    && section.get("block_states") instanceof Map<?, ?> blockStates
+                    && decodeBlockStates(blockStates, materials, values, chunkX, chunkZ)) {
+                captured.add(new CapturedSection(cx, sectionY, cz, VoxelSection.pack(values)));
+            }
+        }
+    }
+
+    /**
+     * Decodes the block states of a section into materials.
+     *
+     * The data packs palette indices of {@code max(4, ceil(log2(palette size)))} bits into longs
+     * from the lowest bits up, with no index spanning two longs, in y, z, x order. A palette with a
+     * single state has no data.
+     *
+     * @return true if the section holds any non-empty voxel.
+     */
+    private static boolean decodeBlockStates(Map<?, ?> blockStates, BlockNameMaterials materials, int[] values, int chunkX, int chunkZ) throws IOException {
+        if (!(blockStates.get("palette") instanceof List<?> palette) || palette.isEmpty()) {
+            return false;
+        }
+        int[] paletteMaterials = new int[palette.size()];
+        boolean hasSurface = false;
+        for (int p = 0; p < paletteMaterials.length; p++) {
+            if (!(palette.get(p) instanceof Map<?, ?> state) || !(state.get("Name") instanceof String name)) {
+                throw new IOException("Chunk " + chunkX + ", " + chunkZ + " has a block state without a name");
+            }
+            paletteMaterials[p] = materials.getMaterial(name);
+            hasSurface |= paletteMaterials[p] != AcousticVolume.EMPTY;
+        }
+        if (!hasSurface) {
+            return false;
+        }
+        if (paletteMaterials.length == 1) {
+            Arrays.fill(values, paletteMaterials[0]);
+            return true;
+        }
+
+        int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(paletteMaterials.length - 1));
+        int valuesPerLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        if (!(blockStates.get("data") instanceof long[] data) || data.length != (VoxelSection.VOLUME + valuesPerLong - 1) / valuesPerLong) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " has block state data of the wrong length");
+        }
+        hasSurface = false;
+        for (int i = 0; i < VoxelSection.VOLUME; i++) {
+            int entry = (int) ((data[i / valuesPerLong] >>> ((i % valuesPerLong) * bits)) & mask);
+            if (entry >= paletteMaterials.length) {
+                throw new IOException("Chunk " + chunkX + ", " + chunkZ + " has a block state outside its palette");
+            }
+            int material = paletteMaterials[entry];
+            hasSurface |= material != AcousticVolume.EMPTY;
+            values[VoxelSection.index(i & 15, i >> 8, (i >> 4) & 15)] = material;
+        }
+        return hasSurface;
+    }
+
+    private static AcousticVolume build(int minChunkX, int minChunkZ, int chunksAcross, Iterable<CapturedSection> captured) {
+        int minSectionY = Integer.MAX_VALUE;
+        int maxSectionY = Integer.MIN_VALUE;
+        for (CapturedSection section : captured) {
+            minSectionY = Math.min(minSectionY, section.sectionY);
+            maxSectionY = Math.max(maxSectionY, section.sectionY);
+        }
+        if (minSectionY > maxSectionY) {
+            minSectionY = 0;
+            maxSectionY = 0;
+        }
+
+        AcousticVolume.Builder builder = new AcousticVolume.Builder(
+                minChunkX, minSectionY, minChunkZ,
+                chunksAcross, maxSectionY - minSectionY + 1, chunksAcross
+        );
+        for (CapturedSection section : captured) {
+            builder.putSection(section.cx, section.sectionY - minSectionY, section.cz, section.section);
+        }
+        return builder.build();
+    }
+
+    private static final class CapturedSection {
+        final int cx;
+        final int sectionY;
+        final int cz;
+        final VoxelSection section;
+
+        CapturedSection(int cx, int sectionY, int cz, VoxelSection section) {
+            this.cx = cx;
+            this.sectionY = sectionY;
+            this.cz = cz;
+            this.section = section;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package net.fg83.rdrgen.volume;
+
+import net.fg83.rdrgen.material.BlockStateMaterials;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copies the loaded chunk sections around a point so they can be turned into an
+ * {@link AcousticVolume} off the client thread.
+ *
+ * Capturing reads the live world, so {@link #capture} must run on the client thread. It only
+ * copies the block state containers of the sections, which is a copy of their palette and packed
+ * storage. Resolving the states into materials is the expensive part and is done later by
+ * {@link #resolve}, on the engine thread, while the game keeps running.
+ */
+public class VolumeCapture {
+
+    private final int minChunkX;
+    private final int minSectionY;
+    private final int minChunkZ;
+    private final int chunksAcross;
+    private final int sectionsY;
+    private final List<CopiedSection> sections;
+
+    private VolumeCapture(int minChunkX, int minSectionY, int minChunkZ, int chunksAcross, int sectionsY, List<CopiedSection> sections) {
+        this.minChunkX = minChunkX;
+        this.minSectionY = minSectionY;
+        this.minChunkZ = minChunkZ;
+        this.chunksAcross = chunksAcross;
+        this.sectionsY = sectionsY;
+        this.sections = sections;
+    }
+
+    /**
+     * Copies every loaded chunk within a square radius of the given position, over the full build
+     * height of the world. Unloaded chunks and sections that contain only air are not copied.
+     *
+     * @param world       The world to copy from. Must only be accessed on its owning thread.
+     * @param center      The position the volume is centred on, usually the receiver.
+     * @param chunkRadius The number of chunks to include on each side of the centre chunk.
+     * @return A copy of the surrounding sections that no longer depends on the world.
+     */
+    public static VolumeCapture capture(World world, Vec3d center, int chunkRadius) {
+        int centerChunkX = ((int) Math.floor(center.x)) >> 4;
+        int centerChunkZ = ((int) Math.floor(center.z)) >> 4;
+        int minChunkX = centerChunkX - chunkRadius;
+        int minChunkZ = centerChunkZ - chunkRadius;
+        int chunksAcross = chunkRadius * 2 + 1;
+        int minSectionY = world.getBottomSectionCoord();
+        int sectionsY = world.countVerticalSections();
+        List<CopiedSection> sections = new ArrayList<>();
+
+        for (int cx = 0; cx < chunksAcross; cx++) {
+            for (int cz = 0; cz < chunksAcross; cz++) {
+                int chunkX = minChunkX + cx;
+                int chunkZ = minChunkZ + cz;
+                if (!world.getChunkManager().isChunkLoaded(chunkX, chunkZ)) {
+                    continue;
+                }
+                WorldChunk chunk = world.getChunk(chunkX, chunkZ);
+                ChunkSection[] chunkSections = chunk.getSectionArray();
+
+                for (int sy = 0; sy < sectionsY && sy < chunkSections.length; sy++) {
+                    ChunkSection section = chunkSections[sy];
+                    if (section == null || section.isEmpty()) {
+                        continue;
+                    }
+                    sections.add(new CopiedSection(cx, sy, cz, section.getBlockStateContainer().copy()));
+                }
+            }
+        }
+
+        return new VolumeCapture(minChunkX, minSectionY, minChunkZ, chunksAcross, sectionsY, sections);
+    }
+
+    /**
+     * Resolves the copied block states into materials. Does not touch the world, so it can run
+     * on any thread.
+     *
+     * The states of each palette are resolved first. Sections whose states are all acoustically
+     * empty are skipped and sections made of a single material are filled without reading their
+     * voxels; only mixed sections are resolved voxel by voxel.
+     *
+     * @param materials The block state to material table.
+     * @return An immutable snapshot of the surrounding blocks.
+     */
+    public AcousticVolume resolve(BlockStateMaterials materials) {
+        AcousticVolume.Builder builder = new AcousticVolume.Builder(
+                minChunkX, minSectionY, minChunkZ,
+                chunksAcross, sectionsY, chunksAcross
+        );
+        int[] values = new int[VoxelSection.VOLUME];
+        // First solid material in the palette, whether another solid material follows, and
+        // whether any state is empty
+        int[] palette = new int[3];
+
+        for (CopiedSection section : sections) {
+            palette[0] = AcousticVolume.EMPTY;
+            palette[1] = 0;
+            palette[2] = 0;
+            section.states.count((state, count) -> {
+                int material = materials.getMaterial(Block.getRawIdFromState(state));
+                if (material == AcousticVolume.EMPTY) {
+                    palette[2] = 1;
+                }
+                else if (palette[0] == AcousticVolume.EMPTY) {
+                    palette[0] = material;
+                }
+                else if (material != palette[0]) {
+                    palette[1] = 1;
+                }
+            });
+            if (palette[0] == AcousticVolume.EMPTY) {
+                continue;
+            }
+
+            boolean mixed = palette[1] != 0 || palette[2] != 0;
+            if (!mixed) {
+                Arrays.fill(values, palette[0]);
+            }
+            else {
+                for (int y = 0; y < VoxelSection.SIZE; y++) {
+                    for (int z = 0; z < VoxelSection.SIZE; z++) {
+                        for (int x = 0; x < VoxelSection.SIZE; x++) {
+                            values[VoxelSection.index(x, y, z)] = materials.getMaterial(Block.getRawIdFromState(section.states.get(x, y, z)));
+                        }
+                    }
+                }
+            }
+            builder.putSection(section.cx, section.sy, section.cz, values);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * A copied section and its offset from the lowest corner of the capture.
+     */
+    private static final class CopiedSection {
+        final int cx;
+        final int sy;
+        final int cz;
+        final PalettedContainer<BlockState> states;
+
+        CopiedSection(int cx, int sy, int cz, PalettedContainer<BlockState> states) {
+            this.cx = cx;
+            this.sy = sy;
+            this.cz = cz;
+            this.states = states;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package net.fg83.rdrgen.volume;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A palette-compressed 16x16x16 cube of voxels.
+ *
+ * Each section keeps a small local palette of material indices and a bit-packed
+ * array of local palette entries, similar to Minecraft's own paletted containers.
+ * Entries never span two longs, so a lookup is a single shift and mask. Sections that
+ * contain only one value store no packed data at all.
+ *
+ * Next to the materials, each section keeps an occupancy hierarchy for empty-space skipping:
+ * one bit per voxel that is set for non-empty voxels, and one bit per 4x4x4 brick that is set
+ * when the brick holds any non-empty voxel. The 64 bricks of a section fit in a single long.
+ *
+ * Instances are immutable once built and can be read from any number of threads
+ * without synchronization.
+ */
+public final class VoxelSection {
+    public static final int SIZE = 16;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+    public static final int BRICK_SIZE = 4;
+
+    private final int[] palette;
+    private final long[] data;
+    private final int bitsPerEntry;
+    private final int entriesPerLong;
+    private final long mask;
+
+    // One bit per voxel in index order, or null when all voxels share one value
+    private final long[] occupancy;
+    // One bit per brick, see brickIndex
+    private final long brickMask;
+
+    private VoxelSection(int[] palette, long[] data, int bitsPerEntry, long[] occupancy, long brickMask) {
+        this.palette = palette;
+        this.data = data;
+        this.bitsPerEntry = bitsPerEntry;
+        this.entriesPerLong = bitsPerEntry == 0 ? 0 : 64 / bitsPerEntry;
+        this.mask = (1L << bitsPerEntry) - 1;
+        this.occupancy = occupancy;
+        this.brickMask = brickMask;
+    }
+
+    /**
+     * Builds a packed section from a dense array of material indices.
+     *
+     * @param values 4096 material indices in section order (see {@link #index(int, int, int)}).
+     * @return a packed, immutable section.
+     */
+    public static VoxelSection pack(int[] values) {
+        if (values.length != VOLUME) {
+            throw new IllegalArgumentException("Expected " + VOLUME + " voxels, got " + values.length);
+        }
+
+        int maxValue = 0;
+        for (int value : values) {
+            maxValue = Math.max(maxValue, value);
+        }
+
+        // Reverse lookup from material index to local palette index
+        int[] localLookup = new int[maxValue + 1];
+        Arrays.fill(localLookup, -1);
+        int[] localPalette = new int[16];
+        int paletteSize = 0;
+        int[] localIndices = new int[VOLUME];
+
+        for (int i = 0; i < VOLUME; i++) {
+            int value = values[i];
+            int local = localLookup[value];
+            if (local == -1) {
+                if (paletteSize == localPalette.length) {
+                    localPalette = Arrays.copyOf(localPalette, paletteSize * 2);
+                }
+                local = paletteSize;
+                localPalette[paletteSize++] = value;
+                localLookup[value] = local;
+            }
+            localIndices[i] = local;
+        }
+
+        localPalette = Arrays.copyOf(localPalette, paletteSize);
+        if (paletteSize == 1) {
+            return new VoxelSection(localPalette, null, 0, null, localPalette[0] == AcousticVolume.EMPTY ? 0 : -1L);
+        }
+
+        long[] occupancy = new long[VOLUME / 64];
+        long brickMask = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            if (values[i] != AcousticVolume.EMPTY) {
+                occupancy[i >>> 6] |= 1L << i;
+                brickMask |= 1L << brickIndex(i & 15, i >>> 8, (i >>> 4) & 15);
+            }
+        }
+
+        int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        int perLong = 64 / bits;
+        long[] packed = new long[(VOLUME + perLong - 1) / perLong];
+        for (int i = 0; i < VOLUME; i++) {
+            packed[i / perLong] |= (long) localIndices[i] << ((i % perLong) * bits);
+        }
+        return new VoxelSection(localPalette, packed, bits, occupancy, brickMask);
+    }
+
+    private static int brickIndex(int x, int y, int z) {
+        return ((y >> 2) << 4) | ((z >> 2) << 2) | (x >> 2);
+    }
+
+    /**
+     * Returns the section-local index of a voxel.
+     *
+     * @param x local x coordinate, 0-15.
+     * @param y local y coordinate, 0-15.
+     * @param z local z coordinate, 0-15.
+     * @return the index into a dense 4096-entry section array.
+     */
+    public static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    /**
+     * Returns the edge length of the largest empty, aligned region of the section containing a
+     * voxel: the whole section, the voxel's brick, or the voxel itself.
+     *
+     * @param x local x coordinate, 0-15.
+     * @param y local y coordinate, 0-15.
+     * @param z local z coordinate, 0-15.
+     * @return {@link #SIZE}, {@link #BRICK_SIZE} or 1 for an empty voxel, or 0 if the voxel is not empty.
+     */
+    public int getEmptyRegionSize(int x, int y, int z) {
+        if (brickMask == 0) {
+            return SIZE;
+        }
+        if ((brickMask & (1L << brickIndex(x, y, z))) == 0) {
+            return BRICK_SIZE;
+        }
+        if (occupancy == null) {
+            return 0;
+        }
+        int index = index(x, y, z);
+        return (occupancy[index >>> 6] & (1L << index)) == 0 ? 1 : 0;
+    }
+
+    public boolean isOccupied(int x, int y, int z) {
+        return getEmptyRegionSize(x, y, z) == 0;
+    }
+
+    public boolean isEmpty() {
+        return brickMask == 0;
+    }
+
+    /**
+     * Reads the material index stored at the given section-local index.
+     *
+     * @param index a section-local index as produced by {@link #index(int, int, int)}.
+     * @return the material index of the voxel.
+     */
+    public int get(int index) {
+        if (bitsPerEntry == 0) {
+            return palette[0];
+        }
+        long word = data[index / entriesPerLong];
+        int local = (int) ((word >>> ((index % entriesPerLong) * bitsPerEntry)) & mask);
+        return palette[local];
+    }
+
+    /**
+     * Returns the number of bytes {@link #write(DataOutput)} writes, always a multiple of 8.
+     */
+    int getSerializedSize() {
+        return 8 + align8(palette.length * 4) + (data == null ? 0 : data.length * 8);
+    }
+
+    /**
+     * Writes the section in its packed form, laid out for {@link #map(ByteBuffer, int, int[])}: the
+     * palette size and bits per entry as ints, the palette, padded to a multiple of 8 bytes, and
+     * then the packed entries as longs if there is more than one palette entry. Written at an
+     * offset that is a multiple of 8, every array stays aligned to its element size.
+     *
+     * @param out The output to write to.
+     * @throws IOException if writing fails.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(palette.length);
+        out.writeInt(bitsPerEntry);
+        for (int material : palette) {
+            out.writeInt(material);
+        }
+        if ((palette.length & 1) != 0) {
+            out.writeInt(0);
+        }
+        if (data == null) {
+            return;
+        }
+        for (long word : data) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a section written by {@link #write(DataOutput)} straight from a mapped file,
+     * translating its material indices.
+     *
+     * The palette and the packed entries are bulk-read as they are, without unpacking or packing
+     * them again. Only the occupancy bits are derived, in the same pass that checks every entry
+     * lies within the palette, so a corrupt file cannot make lookups fail later.
+     *
+     * @param buffer The mapped file.
+     * @param offset The offset of the section in the file.
+     * @param remap  The material index to use for every material index stored in the section.
+     *               Only {@link AcousticVolume#EMPTY} may map to itself as empty.
+     * @return the section.
+     * @throws IOException if the section is malformed or runs past the end of the file.
+     */
+    static VoxelSection map(ByteBuffer buffer, int offset, int[] remap) throws IOException {
+        if (offset < 0 || (long) offset + 8 > buffer.limit()) {
+            throw new IOException("Section at " + offset + " lies outside the file");
+        }
+        int paletteSize = buffer.getInt(offset);
+        int bits = buffer.getInt(offset + 4);
+        boolean packed = paletteSize > 1;
+        if (paletteSize < 1 || paletteSize > VOLUME || (packed ? bits != 32 - Integer.numberOfLeadingZeros(paletteSize - 1) : bits != 0)) {
+            throw new IOException("Invalid section palette: " + paletteSize + " entries of " + bits + " bits");
+        }
+        int perLong = packed ? 64 / bits : 0;
+        int words = packed ? (VOLUME + perLong - 1) / perLong : 0;
+        int paletteBytes = align8(paletteSize * 4);
+        if ((long) offset + 8 + paletteBytes + words * 8L > buffer.limit()) {
+            throw new IOException("Section at " + offset + " runs past the end of the file");
+        }
+
+        int[] localPalette = new int[paletteSize];
+        buffer.slice(offset + 8, paletteSize * 4).order(buffer.order()).asIntBuffer().get(localPalette);
+        for (int i = 0; i < paletteSize; i++) {
+            int material = localPalette[i];
+            if (material < 0 || material >= remap.length) {
+                throw new IOException("Invalid material index " + material);
+            }
+            localPalette[i] = remap[material];
+        }
+        if (!packed) {
+            return new VoxelSection(localPalette, null, 0, null, localPalette[0] == AcousticVolume.EMPTY ? 0 : -1L);
+        }
+
+        long[] data = new long[words];
+        buffer.slice(offset + 8 + paletteBytes, words * 8).order(buffer.order()).asLongBuffer().get(data);
+        long entryMask = (1L << bits) - 1;
+        long[] occupancy = new long[VOLUME / 64];
+        long brickMask = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            int local = (int) ((data[i / perLong] >>> ((i % perLong) * bits)) & entryMask);
+            if (local >= paletteSize) {
+                throw new IOException("Invalid palette entry " + local);
+            }
+            if (localPalette[local] != AcousticVolume.EMPTY) {
+                occupancy[i >>> 6] |= 1L << i;
+                brickMask |= 1L << brickIndex(i & 15, i >>> 8, (i >>> 4) & 15);
+            }
+        }
+        return new VoxelSection(localPalette, data, bits, occupancy, brickMask);
+    }
+
+    private static int align8(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    /**
+     * Reads a section of a version 1 {@link CaptureFile}, translating its material indices. That
+     * version stored the palette size and materials, then the bits per entry as a byte, the number
+     * of words and the packed entries, all in a compressed stream.
+     *
+     * @param in       The input to read from.
+     * @param remap    The material index to use for every material index stored in the section.
+     * @return the section.
+     * @throws IOException if reading fails or the data is malformed.
+     */
+    static VoxelSection read(DataInput in, int[] remap) throws IOException {
+        int paletteSize = in.readInt();
+        if (paletteSize < 1 || paletteSize > VOLUME) {
+            throw new IOException("Invalid section palette size " + paletteSize);
+        }
+        int[] localPalette = new int[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            int material = in.readInt();
+            if (material < 0 || material >= remap.length) {
+                throw new IOException("Invalid material index " + material);
+            }
+            localPalette[i] = remap[material];
+        }
+
+        int[] values = new int[VOLUME];
+        if (paletteSize == 1) {
+            Arrays.fill(values, localPalette[0]);
+            return pack(values);
+        }
+        int bits = in.readUnsignedByte();
+        int words = in.readInt();
+        if (bits < 1 || bits > 32 || words != (VOLUME + 64 / bits - 1) / (64 / bits)) {
+            throw new IOException("Invalid section packing: " + bits + " bits in " + words + " words");
+        }
+        int perLong = 64 / bits;
+        long entryMask = (1L << bits) - 1;
+        long word = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            if (i % perLong == 0) {
+                word = in.readLong();
+            }
+            int local = (int) ((word >>> ((i % perLong) * bits)) & entryMask);
+            if (local >= paletteSize) {
+                throw new IOException("Invalid palette entry " + local);
+            }
+            values[i] = localPalette[local];
+        }
+        // Remapping may merge palette entries, so the section is packed again
+        return pack(values);
+    }
+}
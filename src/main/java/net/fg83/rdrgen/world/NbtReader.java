@@ -0,0 +1,188 @@
+package net.fg83.rdrgen.world;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Reads Minecraft's binary NBT format into plain Java values, without depending on the game.
+ *
+ * Compounds become {@code Map<String, Object>}, lists become {@code List<Object>}, arrays stay
+ * primitive arrays, and numbers and strings become their boxed types. Callers pick the tags they
+ * need with a path filter: a tag whose path, the names of its enclosing compounds joined by
+ * {@code /}, is rejected is skipped without being decoded. List elements share the path of their
+ * list. A chunk holds far more than the blocks, such as light, biomes and entities, so this keeps
+ * parsing it cheap.
+ */
+public final class NbtReader {
+    public static final byte END = 0;
+    public static final byte BYTE = 1;
+    public static final byte SHORT = 2;
+    public static final byte INT = 3;
+    public static final byte LONG = 4;
+    public static final byte FLOAT = 5;
+    public static final byte DOUBLE = 6;
+    public static final byte BYTE_ARRAY = 7;
+    public static final byte STRING = 8;
+    public static final byte LIST = 9;
+    public static final byte COMPOUND = 10;
+    public static final byte INT_ARRAY = 11;
+    public static final byte LONG_ARRAY = 12;
+
+    // Vanilla refuses deeper nesting too
+    private static final int MAX_DEPTH = 512;
+
+    private NbtReader() {
+    }
+
+    /**
+     * Reads the named root compound of an NBT stream.
+     *
+     * @param in   The uncompressed stream.
+     * @param keep Decides by path which tags to decode; rejected tags are skipped.
+     * @return the root compound, holding the kept tags.
+     * @throws IOException if reading fails or the stream is not valid NBT.
+     */
+    public static Map<String, Object> readRoot(DataInput in, Predicate<String> keep) throws IOException {
+        byte type = in.readByte();
+        if (type != COMPOUND) {
+            throw new IOException("NBT root is not a compound but tag type " + type);
+        }
+        skipFully(in, in.readUnsignedShort());
+        return readCompound(in, "", keep, 0);
+    }
+
+    private static Map<String, Object> readCompound(DataInput in, String path, Predicate<String> keep, int depth) throws IOException {
+        checkDepth(depth);
+        Map<String, Object> compound = new HashMap<>();
+        while (true) {
+            byte type = in.readByte();
+            if (type == END) {
+                return compound;
+            }
+            String name = in.readUTF();
+            String childPath = path.isEmpty() ? name : path + "/" + name;
+            if (keep.test(childPath)) {
+                compound.put(name, readValue(in, type, childPath, keep, depth + 1));
+            }
+            else {
+                skipValue(in, type, depth + 1);
+            }
+        }
+    }
+
+    private static Object readValue(DataInput in, byte type, String path, Predicate<String> keep, int depth) throws IOException {
+        switch (type) {
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BYTE_ARRAY: {
+                byte[] values = new byte[readLength(in)];
+                in.readFully(values);
+                return values;
+            }
+            case STRING:
+                return in.readUTF();
+            case LIST: {
+                checkDepth(depth);
+                byte elementType = in.readByte();
+                int length = readLength(in);
+                List<Object> list = new ArrayList<>(Math.min(length, 1024));
+                for (int i = 0; i < length; i++) {
+                    list.add(readValue(in, elementType, path, keep, depth + 1));
+                }
+                return list;
+            }
+            case COMPOUND:
+                return readCompound(in, path, keep, depth);
+            case INT_ARRAY: {
+                int[] values = new int[readLength(in)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readInt();
+                }
+                return values;
+            }
+            case LONG_ARRAY: {
+                long[] values = new long[readLength(in)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readLong();
+                }
+                return values;
+            }
+            default:
+                throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private static void skipValue(DataInput in, byte type, int depth) throws IOException {
+        switch (type) {
+            case BYTE -> skipFully(in, 1);
+            case SHORT -> skipFully(in, 2);
+            case INT, FLOAT -> skipFully(in, 4);
+            case LONG, DOUBLE -> skipFully(in, 8);
+            case BYTE_ARRAY -> skipFully(in, readLength(in));
+            case STRING -> skipFully(in, in.readUnsignedShort());
+            case LIST -> {
+                checkDepth(depth);
+                byte elementType = in.readByte();
+                int length = readLength(in);
+                for (int i = 0; i < length; i++) {
+                    skipValue(in, elementType, depth + 1);
+                }
+            }
+            case COMPOUND -> {
+                checkDepth(depth);
+                while (true) {
+                    byte childType = in.readByte();
+                    if (childType == END) {
+                        break;
+                    }
+                    skipFully(in, in.readUnsignedShort());
+                    skipValue(in, childType, depth + 1);
+                }
+            }
+            case INT_ARRAY -> skipFully(in, (long) readLength(in) * 4);
+            case LONG_ARRAY -> skipFully(in, (long) readLength(in) * 8);
+            default -> throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative NBT length " + length);
+        }
+        return length;
+    }
+
+    private static void skipFully(DataInput in, long bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes may stop early on compressed streams; a read tells a real end apart
+                in.readByte();
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static void checkDepth(int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested deeper than " + MAX_DEPTH);
+        }
+    }
+}
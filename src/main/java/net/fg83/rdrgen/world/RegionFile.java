@@ -0,0 +1,195 @@
+package net.fg83.rdrgen.world;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A read-only, memory-mapped Anvil region file ({@code r.<x>.<z>.mca}) holding 32x32 chunks of a
+ * world save.
+ *
+ * The file starts with a 4 KiB table of chunk locations, each an offset and a length in 4 KiB
+ * sectors, followed by a 4 KiB table of timestamps. A chunk is stored at its offset as its
+ * length in bytes, a compression type and its compressed NBT. Chunks too large for the region
+ * file are stored in a {@code c.<x>.<z>.mcc} file next to it instead.
+ *
+ * The whole file is mapped once, so finding a chunk costs nothing and only the chunks that are
+ * read are ever paged in and decompressed, straight from the mapping.
+ */
+public final class RegionFile implements Closeable {
+    public static final int CHUNKS = 32;
+
+    private static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_BYTES = 2 * SECTOR_BYTES;
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+    private static final int COMPRESSION_LZ4 = 4;
+    private static final int EXTERNAL_FLAG = 0x80;
+
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Maps a region file.
+     *
+     * @param path    The region file.
+     * @param regionX The region's x coordinate, the chunk x coordinate divided by 32.
+     * @param regionZ The region's z coordinate.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public RegionFile(Path path, int regionX, int regionZ) throws IOException {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /**
+     * Returns the name of the region file holding a chunk.
+     *
+     * @param chunkX The chunk's x coordinate.
+     * @param chunkZ The chunk's z coordinate.
+     * @return the file name.
+     */
+    public static String getFileName(int chunkX, int chunkZ) {
+        return "r." + Math.floorDiv(chunkX, CHUNKS) + "." + Math.floorDiv(chunkZ, CHUNKS) + ".mca";
+    }
+
+    /**
+     * Returns whether a chunk was ever saved to this region.
+     *
+     * @param chunkX The chunk's x coordinate, which must lie in this region.
+     * @param chunkZ The chunk's z coordinate.
+     */
+    public boolean hasChunk(int chunkX, int chunkZ) {
+        return getLocation(chunkX, chunkZ) != 0;
+    }
+
+    /**
+     * Decompresses and reads the NBT of a chunk.
+     *
+     * @param chunkX The chunk's x coordinate, which must lie in this region.
+     * @param chunkZ The chunk's z coordinate.
+     * @param keep   Decides by path which tags to decode, see {@link NbtReader}.
+     * @return the chunk's root compound, or {@code null} if the chunk was never saved.
+     * @throws IOException if the chunk is corrupt or compressed in an unsupported way.
+     */
+    public Map<String, Object> readChunk(int chunkX, int chunkZ, Predicate<String> keep) throws IOException {
+        int location = getLocation(chunkX, chunkZ);
+        if (location == 0) {
+            return null;
+        }
+        long offset = (long) (location >>> 8) * SECTOR_BYTES;
+        if (offset < HEADER_BYTES || offset + 5 > buffer.limit()) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " lies outside " + path);
+        }
+        int length = buffer.getInt((int) offset);
+        int compression = buffer.get((int) offset + 4) & 0xFF;
+        if (length < 1 || offset + 4 + length > buffer.limit()) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " of " + path + " has invalid length " + length);
+        }
+
+        InputStream data;
+        if ((compression & EXTERNAL_FLAG) != 0) {
+            compression &= ~EXTERNAL_FLAG;
+            data = new BufferedInputStream(Files.newInputStream(path.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc")));
+        }
+        else {
+            data = new BufferInputStream(buffer.slice((int) offset + 5, length - 1));
+        }
+        try (DataInputStream in = new DataInputStream(decompress(data, compression))) {
+            return NbtReader.readRoot(in, keep);
+        }
+    }
+
+    private InputStream decompress(InputStream data, int compression) throws IOException {
+        switch (compression) {
+            case COMPRESSION_GZIP:
+                return new BufferedInputStream(new GZIPInputStream(data));
+            case COMPRESSION_ZLIB:
+                return new BufferedInputStream(new InflaterInputStream(data));
+            case COMPRESSION_NONE:
+                return data;
+            case COMPRESSION_LZ4:
+                data.close();
+                throw new IOException("LZ4-compressed chunks are not supported, set region-file-compression to deflate");
+            default:
+                data.close();
+                throw new IOException("Unknown chunk compression " + compression + " in " + path);
+        }
+    }
+
+    private int getLocation(int chunkX, int chunkZ) {
+        int localX = chunkX - regionX * CHUNKS;
+        int localZ = chunkZ - regionZ * CHUNKS;
+        if (localX < 0 || localX >= CHUNKS || localZ < 0 || localZ >= CHUNKS) {
+            throw new IllegalArgumentException("Chunk " + chunkX + ", " + chunkZ + " is not in region " + regionX + ", " + regionZ);
+        }
+        if (buffer.limit() < HEADER_BYTES) {
+            return 0;
+        }
+        return buffer.getInt((localZ * CHUNKS + localX) * 4);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a slice of the mapped file without copying it.
+     */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long bytes) {
+            int count = (int) Math.max(0, Math.min(bytes, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}